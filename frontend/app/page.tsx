@@ -110,10 +110,10 @@ export default function StatusServerApp() {
                         updateStatus(status)
                     })
 
-                    // Subscribe to initial status load
-                    stompClientRef.current.subscribe("/topic/init-status", (message: any) => {
-                        const status = JSON.parse(message.body)
-                        updateStatus(status)
+                    // Subscribe to initial status load (sent only to this session, as arrays of statuses)
+                    stompClientRef.current.subscribe("/user/queue/init-status", (message: any) => {
+                        const statuses: StatusMessage[] = JSON.parse(message.body)
+                        mergeStatuses(statuses)
                     })
 
                     // Subscribe to status deletions
@@ -205,6 +205,19 @@ export default function StatusServerApp() {
             console.log("Disconnected")
     }
 
+    const mergeStatuses = (incoming: StatusMessage[]) => {
+        setStatuses((prev) => {
+            const byId = new Map(prev.map((s) => [s.id, s]))
+            incoming.forEach((status) => byId.set(status.id, status))
+            return Array.from(byId.values())
+        })
+
+        const own = incoming.find((status) => status.username === connectedUsername)
+        if (own) {
+            setCurrentUserStatus(own.statustext)
+        }
+    }
+
     const updateStatus = (status: StatusMessage) => {
         setStatuses((prev) => {
             const existingIndex = prev.findIndex((s) => s.id === status.id)
@@ -0,0 +1,99 @@
+package project.status_service;
+
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link WebSocketStatusController#broadcastStatus} through a {@link SimpMessagingTemplate} and the simple broker
+ * to {@code sessions} sessions subscribed to {@code /topic/status}. Channels deliver on the calling thread and the
+ * outbound channel carries the {@link SubscriptionFilters} interceptor as in the application, but frames end in a
+ * counter instead of a WebSocket, so this measures the broker's fan-out and not the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int sessions;
+
+    SimpleBrokerMessageHandler broker;
+    WebSocketStatusController controller;
+    Status status;
+    final LongAdder delivered = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        outbound.addInterceptor(new SubscriptionFilters(meterRegistry));
+        outbound.subscribe(message -> {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                delivered.increment();
+            }
+        });
+
+        broker = new SimpleBrokerMessageHandler(inbound, outbound, brokerChannel, List.of("/topic"));
+        broker.start();
+        for (int i = 0; i < sessions; i++) {
+            // The broker only delivers to sessions it saw connect
+            SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+            connect.setSessionId("session-" + i);
+            broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+            SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            subscribe.setSessionId("session-" + i);
+            subscribe.setSubscriptionId("0");
+            subscribe.setDestination(StatusGroups.STATUS_TOPIC);
+            broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+        }
+
+        SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(new MappingJackson2MessageConverter(Jackson2ObjectMapperBuilder.json().build()));
+        controller = new WebSocketStatusController(template, null, null, null, null, null, null, null, meterRegistry);
+        status = new Status(237644055330816L, "alice", "Busy", LocalDateTime.now(), 232074885447680L, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.stop();
+        if (delivered.sum() == 0) {
+            throw new IllegalStateException("No frames were delivered");
+        }
+    }
+
+    @Benchmark
+    public void broadcastStatus() {
+        controller.broadcastStatus(status);
+    }
+}
@@ -0,0 +1,108 @@
+package project.status_service;
+
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The inactivity cleanup with {@code users} tracked users: the cost of recording activity, and of one sweep in
+ * which every user goes inactive at once, i.e. the {@link InactivityTracker} draining that many due deadlines.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class InactivityBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Tracked {
+
+        @Param({"1000", "100000", "1000000"})
+        int users;
+
+        InactivityTracker tracker;
+        String[] usernames;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            tracker = new InactivityTracker(new StatusProperties(), event -> {
+            }, new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+            tracker.start();
+            usernames = new String[users];
+            for (int i = 0; i < users; i++) {
+                usernames[i] = "user-" + i;
+                tracker.touch(usernames[i]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            tracker.stop();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class AllDue {
+
+        @Param({"1000", "100000", "1000000"})
+        int users;
+
+        InactivityTracker tracker;
+        CountDownLatch inactive;
+
+        // A fresh tracker whose deadlines are all due, its worker not started yet
+        @Setup(Level.Invocation)
+        public void setup() throws InterruptedException {
+            StatusProperties properties = new StatusProperties();
+            properties.getInactivity().setInactiveAfter(Duration.ofMillis(1));
+            properties.getInactivity().setRemoveAfter(Duration.ofHours(1));
+            inactive = new CountDownLatch(users);
+            tracker = new InactivityTracker(properties, event -> {
+                if (event instanceof InactivityEvent e && e.phase() == InactivityEvent.Phase.INACTIVE) {
+                    inactive.countDown();
+                }
+            }, new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+            for (int i = 0; i < users; i++) {
+                tracker.touch("user-" + i);
+            }
+            Thread.sleep(5);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            tracker.stop();
+        }
+    }
+
+    @Benchmark
+    public void touch(Tracked state) {
+        state.tracker.touch(state.usernames[ThreadLocalRandom.current().nextInt(state.users)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public void sweep(AllDue state) throws InterruptedException {
+        state.tracker.start();
+        state.inactive.await();
+    }
+}
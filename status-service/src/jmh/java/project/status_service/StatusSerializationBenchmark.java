@@ -0,0 +1,66 @@
+package project.status_service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single {@link Status} as JSON, the format of REST responses and STOMP broadcasts, and as {@link StatusCodec},
+ * the format of replication, the journal and the outbox.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusSerializationBenchmark {
+
+    ObjectMapper objectMapper;
+    Status status;
+    byte[] json;
+    byte[] binary;
+
+    @Setup
+    public void setup() throws Exception {
+        // Configured like the application's mapper: java.time support, ISO dates
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        status = new Status(237644055330816L, "alice", "Busy", LocalDateTime.now(), 232074885447680L, 1);
+        status.setGroup("ops");
+        json = objectMapper.writeValueAsBytes(status);
+        binary = StatusCodec.encode(status);
+    }
+
+    @Benchmark
+    public byte[] jsonWrite() throws Exception {
+        return objectMapper.writeValueAsBytes(status);
+    }
+
+    @Benchmark
+    public Status jsonRead() throws Exception {
+        return objectMapper.readValue(json, Status.class);
+    }
+
+    @Benchmark
+    public byte[] codecWrite() {
+        return StatusCodec.encode(status);
+    }
+
+    @Benchmark
+    public Status codecRead() {
+        return StatusCodec.read(ByteBuffer.wrap(binary));
+    }
+}
@@ -0,0 +1,71 @@
+package project.status_service;
+
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store operations on a {@link StatusService} holding {@code size} statuses, persistence disabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class StatusServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    StatusService statusService;
+    String[] usernames;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StatusProperties properties = new StatusProperties();
+        statusService = new StatusService(new NodeStatusIdGenerator(properties), new StatusJournal(properties),
+                new HybridClock(properties), new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+        usernames = new String[size];
+        for (int i = 0; i < size; i++) {
+            usernames[i] = "user-" + i;
+            statusService.saveOrUpdate(new StatusRequest(usernames[i], "Online"));
+        }
+    }
+
+    @Benchmark
+    public Status saveOrUpdate() {
+        return statusService.saveOrUpdate(new StatusRequest(randomUsername(), "Busy"));
+    }
+
+    @Benchmark
+    public Status findByUsername() {
+        return statusService.findByUsername(randomUsername());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Status> all() {
+        return statusService.all();
+    }
+
+    private String randomUsername() {
+        return usernames[ThreadLocalRandom.current().nextInt(size)];
+    }
+}
@@ -0,0 +1,94 @@
+package project.status_service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in microseconds with log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} buckets, so a reported percentile is at most about 9% above the true value.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int MAX_POWER = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(MAX_POWER * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private volatile long max;
+
+    void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sum.add(value);
+        if (value > max) {
+            synchronized (this) {
+                max = Math.max(max, value);
+            }
+        }
+    }
+
+    long count() {
+        return total.sum();
+    }
+
+    // Upper bound of the bucket holding the given percentile (0-100)
+    long percentile(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long count = count();
+        summary.put("count", count);
+        summary.put("meanMicros", count > 0 ? sum.sum() / count : 0);
+        summary.put("p50Micros", percentile(50));
+        summary.put("p90Micros", percentile(90));
+        summary.put("p99Micros", percentile(99));
+        summary.put("p999Micros", percentile(99.9));
+        summary.put("maxMicros", max);
+        return summary;
+    }
+
+    String format() {
+        return String.format("n=%d p50=%s p90=%s p99=%s p99.9=%s max=%s", count(), millis(percentile(50)),
+                millis(percentile(90)), millis(percentile(99)), millis(percentile(99.9)), millis(max));
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2fms", micros / 1000.0);
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int power = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (power - 3)) & (SUB_BUCKETS - 1));
+        return Math.min((power - 2) * SUB_BUCKETS + sub, MAX_POWER * SUB_BUCKETS - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int power = bucket / SUB_BUCKETS + 2;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (power - 3)) - 1;
+    }
+}
@@ -0,0 +1,393 @@
+package project.status_service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.PrintStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Starts a cluster of status nodes in this JVM on loopback ports, with {@code status.peers} wired between them,
+ * and drives it with STOMP clients over real WebSocket connections:
+ * <ol>
+ *   <li>{@code clients} subscribers on {@code /topic/status}, spread evenly over the nodes</li>
+ *   <li>{@code publishers} clients sending to {@code /app/status} at {@code rate} messages per second each, for
+ *       {@code warmup} and then {@code duration} seconds</li>
+ *   <li>a reconnect storm: every subscriber of the first node disconnects and reconnects at once, then asks for
+ *       the initial statuses</li>
+ * </ol>
+ * Every status text carries the publishing node and {@link System#nanoTime()}, so a subscriber can tell the
+ * publish-to-receive latency and whether the status came from its own node (local) or was replicated to it
+ * (cross-node). Everything runs in one process, offline. The delivery ratio compares received frames with
+ * published messages times subscribers; below 1 means sessions fell behind and had superseded frames conflated
+ * ({@code status.websocket.conflate}) or were still receiving when the window closed.
+ * <p>
+ * Settings are {@code key=value} arguments, see {@link Settings}. The report goes to stdout and
+ * {@code report} (JSON); node output goes to {@code nodes.log} in the work directory.
+ */
+public final class LoadHarness {
+
+    private final Settings settings;
+    private final PrintStream report;
+    private final WebSocketStompClient stompClient;
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final List<StompSession> publishers = new ArrayList<>();
+    private final Semaphore handshakes;
+    // Reconnecting clients wait for their snapshot here, so thousands of them do not hold platform threads
+    private final ExecutorService waiters = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LatencyHistogram local = new LatencyHistogram();
+    private final LatencyHistogram crossNode = new LatencyHistogram();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private volatile boolean recording;
+
+    private LoadHarness(Settings settings, PrintStream report) {
+        this.settings = settings;
+        this.report = report;
+        this.handshakes = new Semaphore(settings.maxConcurrentHandshakes);
+        this.stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        this.stompClient.setMessageConverter(new SimpleMessageConverter());
+        this.stompClient.setInboundMessageSizeLimit(16 * 1024 * 1024);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.parse(args);
+        Path workDir = Files.createTempDirectory("status-load-");
+        PrintStream report = System.out;
+        PrintStream nodeLog = new PrintStream(Files.newOutputStream(workDir.resolve("nodes.log")), true,
+                StandardCharsets.UTF_8);
+        System.setOut(nodeLog);
+        System.setErr(nodeLog);
+
+        report.println("[LOAD] " + settings + ", node output in " + workDir.resolve("nodes.log"));
+        LoadHarness harness = new LoadHarness(settings, report);
+        int exitCode = 0;
+        try {
+            Map<String, Object> result = harness.run(workDir);
+            Path reportFile = Path.of(settings.report);
+            Files.createDirectories(reportFile.toAbsolutePath().getParent());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile.toFile(), result);
+            report.println("[LOAD] Report written to " + reportFile.toAbsolutePath());
+        } catch (Exception e) {
+            e.printStackTrace(report);
+            exitCode = 1;
+        } finally {
+            harness.shutdown();
+        }
+        System.exit(exitCode);
+    }
+
+    private Map<String, Object> run(Path workDir) throws Exception {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("settings", settings);
+
+        long start = System.nanoTime();
+        startNodes(workDir);
+        report.printf("[LOAD] %d nodes started in %d ms%n", nodes.size(), elapsedMillis(start));
+
+        start = System.nanoTime();
+        for (int i = 0; i < settings.clients; i++) {
+            subscribers.add(new Subscriber(i % settings.nodes));
+        }
+        awaitAll(subscribers.stream().map(Subscriber::connect).toList());
+        report.printf("[LOAD] %d subscribers connected in %d ms%n", subscribers.size(), elapsedMillis(start));
+        result.put("connectMillis", elapsedMillis(start));
+
+        for (int i = 0; i < settings.publishers; i++) {
+            publishers.add(connect(i % settings.nodes, new StompSessionHandlerAdapter() {
+            }).get(30, TimeUnit.SECONDS));
+        }
+
+        result.put("publish", publish());
+        result.put("reconnectStorm", reconnectStorm());
+        return result;
+    }
+
+    private void startNodes(Path workDir) {
+        List<String> peers = new ArrayList<>();
+        for (int i = 0; i < settings.nodes; i++) {
+            peers.add("http://127.0.0.1:" + (settings.basePort + i));
+        }
+        for (int i = 0; i < settings.nodes; i++) {
+            int port = settings.basePort + i;
+            List<String> args = new ArrayList<>(List.of(
+                    "--server.port=" + port,
+                    "--server.address=127.0.0.1",
+                    "--spring.application.name=status-load",
+                    "--status.node-id=" + (i + 1),
+                    "--eureka.client.enabled=false",
+                    "--status.outbox.directory=" + workDir.resolve("node-" + (i + 1)).resolve("outbox"),
+                    "--status.persistence.directory=" + workDir.resolve("node-" + (i + 1)).resolve("store"),
+                    "--status.rate-limit.enabled=" + settings.rateLimit));
+            for (int p = 0; p < peers.size(); p++) {
+                args.add("--status.peers[" + p + "]=" + peers.get(p));
+            }
+            nodes.add(new SpringApplicationBuilder(StatusServiceApplication.class).run(args.toArray(String[]::new)));
+        }
+    }
+
+    private Map<String, Object> publish() throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / settings.rate);
+        for (int i = 0; i < publishers.size(); i++) {
+            StompSession session = publishers.get(i);
+            int node = i % settings.nodes;
+            String username = "load-publisher-" + i;
+            scheduler.scheduleAtFixedRate(() -> send(session, node, username),
+                    periodNanos * i / Math.max(1, publishers.size()), periodNanos, TimeUnit.NANOSECONDS);
+        }
+
+        report.printf("[LOAD] Publishing %.1f msg/s for %ds warm-up and %ds measurement%n",
+                settings.rate * publishers.size(), settings.warmup, settings.duration);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(settings.warmup));
+        published.reset();
+        received.reset();
+        recording = true;
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(settings.duration));
+        long publishedInWindow = published.sum();
+        scheduler.shutdownNow();
+        // Let in-flight frames arrive, they still count towards the window's deliveries
+        Thread.sleep(2000);
+        recording = false;
+        double seconds = (System.nanoTime() - start) / 1e9 - 2;
+
+        long expected = publishedInWindow * subscribers.size();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("published", publishedInWindow);
+        result.put("publishedPerSecond", publishedInWindow / seconds);
+        result.put("delivered", received.sum());
+        result.put("deliveredPerSecond", received.sum() / seconds);
+        result.put("deliveryRatio", expected > 0 ? (double) received.sum() / expected : 0);
+        result.put("localLatency", local.summary());
+        result.put("crossNodeLatency", crossNode.summary());
+
+        report.printf("[LOAD] Published %d (%.1f/s), delivered %d frames (%.1f/s), %.1f%% of expected%n",
+                publishedInWindow, publishedInWindow / seconds, received.sum(), received.sum() / seconds,
+                expected > 0 ? 100.0 * received.sum() / expected : 0);
+        report.println("[LOAD] Local latency:      " + local.format());
+        report.println("[LOAD] Cross-node latency: " + crossNode.format());
+        return result;
+    }
+
+    private void send(StompSession session, int node, String username) {
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/app/status");
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        String body = "{\"username\":\"" + username + "\",\"statusText\":\"" + node + ":" + System.nanoTime() + "\"}";
+        try {
+            session.send(headers, body.getBytes(StandardCharsets.UTF_8));
+            if (recording) {
+                published.increment();
+            }
+        } catch (RuntimeException e) {
+            // A publisher that lost its connection just stops contributing
+        }
+    }
+
+    // Disconnects every subscriber of the first node at once, then reconnects all of them concurrently
+    private Map<String, Object> reconnectStorm() throws Exception {
+        List<Subscriber> storm = subscribers.stream().filter(s -> s.node == 0).toList();
+        storm.forEach(Subscriber::disconnect);
+        Thread.sleep(1000);
+
+        LatencyHistogram reconnect = new LatencyHistogram();
+        long start = System.nanoTime();
+        awaitAll(storm.stream().map(subscriber -> subscriber.reconnect(reconnect)).toList());
+        long total = elapsedMillis(start);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clients", storm.size());
+        result.put("totalMillis", total);
+        result.put("connectToSnapshot", reconnect.summary());
+        report.printf("[LOAD] Reconnect storm: %d clients connected and got their snapshot in %d ms%n",
+                storm.size(), total);
+        report.println("[LOAD] Connect to snapshot: " + reconnect.format());
+        return result;
+    }
+
+    private CompletableFuture<StompSession> connect(int node, StompSessionHandlerAdapter handler) {
+        int port = settings.basePort + node;
+        handshakes.acquireUninterruptibly();
+        CompletableFuture<StompSession> session = stompClient.connectAsync(
+                "ws://127.0.0.1:" + port + "/status-websocket-" + port, handler);
+        return session.whenComplete((s, e) -> handshakes.release());
+    }
+
+    private void onStatus(int node, byte[] payload) {
+        if (!recording) {
+            return;
+        }
+        received.increment();
+        String json = new String(payload, StandardCharsets.UTF_8);
+        int start = json.indexOf("\"statustext\":\"");
+        if (start < 0) {
+            return;
+        }
+        start += 14;
+        int colon = json.indexOf(':', start);
+        int end = json.indexOf('"', start);
+        if (colon < 0 || colon > end) {
+            return;
+        }
+        try {
+            int origin = Integer.parseInt(json, start, colon, 10);
+            long sentAt = Long.parseLong(json, colon + 1, end, 10);
+            long micros = (System.nanoTime() - sentAt) / 1000;
+            (origin == node ? local : crossNode).record(micros);
+        } catch (NumberFormatException e) {
+            // Not one of ours
+        }
+    }
+
+    private void awaitAll(List<? extends CompletableFuture<?>> futures) throws Exception {
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.MINUTES);
+    }
+
+    private void shutdown() {
+        subscribers.forEach(Subscriber::disconnect);
+        publishers.forEach(session -> {
+            try {
+                session.disconnect();
+            } catch (RuntimeException e) {
+                // Already gone
+            }
+        });
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private class Subscriber {
+        final int node;
+        volatile StompSession session;
+
+        Subscriber(int node) {
+            this.node = node;
+        }
+
+        CompletableFuture<?> connect() {
+            return LoadHarness.this.connect(node, new StompSessionHandlerAdapter() {
+            }).thenAccept(session -> {
+                this.session = session;
+                session.subscribe("/topic/status", new FrameHandler(payload -> onStatus(node, payload)));
+            });
+        }
+
+        // Connects and subscribes again, then asks for the snapshot; records the time until it arrives
+        CompletableFuture<?> reconnect(LatencyHistogram histogram) {
+            long start = System.nanoTime();
+            CountDownLatch snapshot = new CountDownLatch(1);
+            return LoadHarness.this.connect(node, new StompSessionHandlerAdapter() {
+            }).thenAcceptAsync(session -> {
+                this.session = session;
+                session.subscribe("/user/queue/init-status", new FrameHandler(payload -> snapshot.countDown()));
+                session.subscribe("/topic/status", new FrameHandler(payload -> onStatus(node, payload)));
+                StompHeaders headers = new StompHeaders();
+                headers.setDestination("/app/request-statuses");
+                session.send(headers, new byte[0]);
+                try {
+                    if (snapshot.await(2, TimeUnit.MINUTES)) {
+                        histogram.record((System.nanoTime() - start) / 1000);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, waiters);
+        }
+
+        void disconnect() {
+            StompSession current = session;
+            if (current != null && current.isConnected()) {
+                current.disconnect();
+            }
+        }
+    }
+
+    private record FrameHandler(Consumer<byte[]> consumer) implements StompFrameHandler {
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return byte[].class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            consumer.accept((byte[]) payload);
+        }
+    }
+
+    /**
+     * Harness settings, given as {@code key=value} arguments; every field name is a key.
+     */
+    public static class Settings {
+        public int nodes = 2;
+        public int basePort = 19001;
+        public int clients = 1000;
+        public int publishers = 20;
+        public double rate = 2;
+        public int warmup = 5;
+        public int duration = 20;
+        public boolean rateLimit = false;
+        public int maxConcurrentHandshakes = 200;
+        public String report = "target/loadtest-report.json";
+
+        static Settings parse(String[] args) throws ReflectiveOperationException {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Expected key=value: " + arg);
+                }
+                var field = Settings.class.getField(arg.substring(0, eq));
+                String value = arg.substring(eq + 1);
+                if (field.getType() == int.class) {
+                    field.setInt(settings, Integer.parseInt(value));
+                } else if (field.getType() == double.class) {
+                    field.setDouble(settings, Double.parseDouble(value));
+                } else if (field.getType() == boolean.class) {
+                    field.setBoolean(settings, Boolean.parseBoolean(value));
+                } else {
+                    field.set(settings, value);
+                }
+            }
+            return settings;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("nodes=%d clients=%d publishers=%d rate=%.1f/s warmup=%ds duration=%ds rateLimit=%s",
+                    nodes, clients, publishers, rate, warmup, duration, rateLimit);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package project.status_service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Keeps this node's store converged with its peers without pulling whole stores.
+ * <p>
+ * For each peer the position (epoch and change sequence) up to which its changes were pulled is remembered.
+ * Every {@code status.sync.interval} the peer's digest is compared with the local one; if this node already knows
+ * the peer's epoch it first pulls the changes since its position from {@code GET /status/changes}. If the roots
+ * still differ, only the buckets that differ are fetched and merged. A new or restarted peer therefore costs one
+ * digest round trip when nothing differs, and a bootstrap transfers only what is missing. A peer is synced as
+ * soon as the {@link PeerRegistry} reports it, which is how a starting node bootstraps.
+ * <p>
+ * Entries are merged by version with {@link StatusService#replicate} and {@link StatusService#replicateDelete},
+ * the same as replicated changes; whatever changes is broadcast to local clients.
+ * <p>
+ * In ownership mode every request carries this node's id, and digests, changes and buckets only cover the
+ * statuses that both nodes keep ({@link OwnershipDirectory#filterFor}); the local digest is taken over the same
+ * statuses. The periodic sync only covers the peers from {@link OwnershipDirectory#syncPartners}. When a peer
+ * leaves, they are synced right away, so the nodes that take over its usernames have them. When this node's
+ * clients start subscribing to topics it was not getting, it syncs with all peers once, for those topics only.
+ * <p>
+ * Syncs block on peer requests, so they run one at a time on a dedicated thread rather than on the scheduler or
+ * the thread that reported the peer; a slow peer then only delays other syncs. A peer already waiting for a sync
+ * is not queued again.
+ */
+@Component
+public class AntiEntropyService {
+
+    private static final Logger log = LoggerFactory.getLogger(AntiEntropyService.class);
+
+    private static final int BUCKETS_PER_REQUEST = 64;
+
+    private final StatusService statusService;
+    private final PeerClient peerClient;
+    private final PeerRegistry peerRegistry;
+    private final OwnershipDirectory ownership;
+    private final WebSocketStatusController ws;
+    private final StatusProperties statusProperties;
+    // peer -> {epoch, seq}
+    private final Map<String, long[]> positions = new ConcurrentHashMap<>();
+    // Peers with a sync waiting in the executor
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("anti-entropy").factory());
+
+    public AntiEntropyService(StatusService statusService, PeerClient peerClient, PeerRegistry peerRegistry,
+            OwnershipDirectory ownership, WebSocketStatusController ws, StatusProperties statusProperties) {
+        this.statusService = statusService;
+        this.peerClient = peerClient;
+        this.peerRegistry = peerRegistry;
+        this.ownership = ownership;
+        this.ws = ws;
+        this.statusProperties = statusProperties;
+    }
+
+    @EventListener
+    public void handlePeer(PeerEvent event) {
+        String peer = event.peer().url();
+        if (event.change() == PeerEvent.Change.JOINED) {
+            trySync(peer);
+        } else {
+            submit(() -> positions.remove(peer));
+            if (ownership.isEnabled()) {
+                ownership.syncPartners().forEach(this::trySync);
+            }
+        }
+    }
+
+    @EventListener
+    public void handleInterest(InterestEvent event) {
+        if (event.grew()) {
+            peerRegistry.urls().forEach(this::trySync);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${status.sync.interval:30s}", initialDelayString = "${status.sync.interval:30s}")
+    public void syncWithPeers() {
+        for (String peer : ownership.isEnabled() ? ownership.syncPartners() : peerRegistry.urls()) {
+            trySync(peer);
+        }
+        statusService.pruneTombstones(LocalDateTime.now().minus(statusProperties.getSync().getTombstoneTtl()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void trySync(String peer) {
+        if (!queued.add(peer)) {
+            return;
+        }
+        submit(() -> {
+            queued.remove(peer);
+            try {
+                sync(peer);
+            } catch (Exception e) {
+                log.warn("Could not sync with {}: {}", peer, e.getMessage());
+            }
+        });
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("Not syncing, shutting down");
+        }
+    }
+
+    private void sync(String peer) {
+        Predicate<Status> filter = ownership.filterFor(peerRegistry.idOf(peer));
+        String node = ownership.isEnabled() ? peerRegistry.selfId() : null;
+        StatusDigest remote = peerClient.fetchDigest(peer, statusService.digest(filter).getRoot(), node).join();
+        long[] position = positions.get(peer);
+        if (position != null && position[0] == remote.getEpoch()) {
+            pullChanges(peer, position, node);
+            remote = peerClient.fetchDigest(peer, statusService.digest(filter).getRoot(), node).join();
+        }
+        if (remote.getBuckets() != null) {
+            repair(peer, remote, filter, node);
+        }
+        if (position == null || position[0] != remote.getEpoch()) {
+            positions.put(peer, new long[] {remote.getEpoch(), remote.getSeq()});
+        }
+    }
+
+    private void pullChanges(String peer, long[] position, String node) {
+        int pageSize = statusProperties.getSync().getPageSize();
+        int applied = 0;
+        StatusChanges page;
+        do {
+            page = peerClient.fetchChanges(peer, position[1], pageSize, node).join();
+            applied += apply(page);
+            position[1] = page.getSeq();
+        } while (page.isMore());
+        if (applied > 0) {
+            log.info("Pulled {} changes from {}", applied, peer);
+        } else {
+            log.debug("Pulled no changes from {}", peer);
+        }
+    }
+
+    private void repair(String peer, StatusDigest remote, Predicate<Status> filter, String node) {
+        long[] local = statusService.digest(filter).getBuckets();
+        int[] differing = IntStream.range(0, local.length)
+                .filter(i -> i >= remote.getBuckets().length || local[i] != remote.getBuckets()[i])
+                .toArray();
+        int applied = 0;
+        for (int from = 0; from < differing.length; from += BUCKETS_PER_REQUEST) {
+            int[] chunk = Arrays.copyOfRange(differing, from, Math.min(from + BUCKETS_PER_REQUEST, differing.length));
+            applied += apply(peerClient.fetchBuckets(peer, chunk, node).join());
+        }
+        if (applied > 0) {
+            log.info("Repaired {} entries in {} buckets from {}", applied, differing.length, peer);
+        } else {
+            log.debug("Repaired nothing in {} buckets from {}", differing.length, peer);
+        }
+    }
+
+    private int apply(StatusChanges changes) {
+        int applied = 0;
+        for (Status status : changes.getStatuses()) {
+            if (statusService.replicate(status)) {
+                ws.broadcastStatus(status);
+                applied++;
+            }
+        }
+        for (Tombstone tombstone : changes.getDeleted()) {
+            Status removed = statusService.replicateDelete(tombstone);
+            if (removed != null) {
+                ws.broadcastDelete(removed);
+                applied++;
+            }
+        }
+        return applied;
+    }
+}
@@ -0,0 +1,89 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Builds the executors of the STOMP channels from {@code status.channels.*} and shuts them down with the context.
+ * <p>
+ * A pooled executor has a bounded queue. When the queue and the pool are full, the rejection policy applies;
+ * with the default {@code CALLER_RUNS}, the thread that read the frame from the socket handles it itself. That
+ * thread stops reading while it does, so TCP pushes back on clients during a surge instead of the queue
+ * growing without bound. With virtual threads every message gets its own thread, and at most
+ * {@code max-pool-size} run at once; further senders wait for a slot, which gives the same kind of backpressure.
+ * <p>
+ * A pooled executor reports its queue depth and busy threads as gauges tagged with the channel name. Virtual
+ * threads have no queue to report, senders waiting for a slot are blocked on the socket thread instead.
+ */
+@Component
+public class ChannelExecutors implements DisposableBean {
+
+    private final List<AutoCloseable> created = new CopyOnWriteArrayList<>();
+    private final MeterRegistry meterRegistry;
+
+    public ChannelExecutors(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return the executor, or null if the channel should deliver on the sending thread
+     */
+    public Executor create(String name, StatusProperties.ChannelExecutor config) {
+        if (config.getMaxPoolSize() <= 0) {
+            return null;
+        }
+        if (config.isVirtualThreads()) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(name + "-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(config.getMaxPoolSize());
+            created.add(executor);
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(name + "-");
+        executor.setCorePoolSize(Math.min(config.getCorePoolSize(), config.getMaxPoolSize()));
+        executor.setMaxPoolSize(config.getMaxPoolSize());
+        executor.setQueueCapacity(config.getQueueCapacity());
+        executor.setKeepAliveSeconds((int) config.getKeepAlive().toSeconds());
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setRejectedExecutionHandler(rejectionHandler(config.getRejectionPolicy()));
+        executor.initialize();
+        created.add(executor::shutdown);
+        // Spring re-initializes the executor as a bean, which replaces its pool, so read through the executor
+        Gauge.builder("status.channel.queue", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .description("Messages waiting for a channel thread")
+                .tag("channel", name)
+                .register(meterRegistry);
+        Gauge.builder("status.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Channel threads handling a message")
+                .tag("channel", name)
+                .register(meterRegistry);
+        return executor;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (AutoCloseable executor : created) {
+            executor.close();
+        }
+    }
+
+    private static RejectedExecutionHandler rejectionHandler(StatusProperties.ChannelExecutor.RejectionPolicy policy) {
+        return switch (policy) {
+            case ABORT -> new ThreadPoolExecutor.AbortPolicy();
+            case CALLER_RUNS -> new ThreadPoolExecutor.CallerRunsPolicy();
+            case DISCARD -> new ThreadPoolExecutor.DiscardPolicy();
+            case DISCARD_OLDEST -> new ThreadPoolExecutor.DiscardOldestPolicy();
+        };
+    }
+}
@@ -0,0 +1,195 @@
+package project.status_service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Outbound buffer for one WebSocket session that keeps only the newest pending frame per status. Frames carrying
+ * a {@value #STATUS_ID_HEADER} header replace a pending frame for the same subscription and status id and take
+ * its place at the end of the queue, so they are never delivered ahead of frames queued after the one they
+ * replace, such as a delete of the same status on another subscription; all other frames are queued as they are.
+ * Sending happens on a virtual thread, so a slow client never blocks the outbound channel, and while it is slow its
+ * updates collapse to the latest state per status.
+ * <p>
+ * A client that keeps a single send busy for longer than {@code status.websocket.send-time-limit}, or lets more
+ * than {@code status.websocket.send-buffer-size-limit} of frames pile up even after conflation, is disconnected,
+ * and so is one whose send fails.
+ */
+public class ConflatingSessionDecorator extends WebSocketSessionDecorator {
+
+    private static final Logger log = LoggerFactory.getLogger(ConflatingSessionDecorator.class);
+
+    static final String STATUS_ID_HEADER = "status-id";
+
+    private final long sendTimeLimit;
+    private final long bufferSizeLimit;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // conflation key, or a sequence number for frames that are not conflated -> frame
+    private final LinkedHashMap<Object, WebSocketMessage<?>> pending = new LinkedHashMap<>();
+    private long pendingBytes;
+    private long sequence;
+    private boolean flushing;
+    private volatile long sendStartedAt;
+    private volatile boolean failed;
+
+    public ConflatingSessionDecorator(WebSocketSession session, long sendTimeLimit, long bufferSizeLimit) {
+        super(session);
+        this.sendTimeLimit = sendTimeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+    }
+
+    public static WebSocketHandlerDecoratorFactory factory(StatusProperties.Websocket config) {
+        long sendTimeLimit = config.getSendTimeLimit().toMillis();
+        long bufferSizeLimit = config.getSendBufferSizeLimit().toBytes();
+        return handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                super.afterConnectionEstablished(
+                        new ConflatingSessionDecorator(session, sendTimeLimit, bufferSizeLimit));
+            }
+        };
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (failed) {
+            return;
+        }
+        long startedAt = sendStartedAt;
+        if (startedAt != 0 && System.currentTimeMillis() - startedAt > sendTimeLimit) {
+            throw limitExceeded("Send time of " + (System.currentTimeMillis() - startedAt) + " ms exceeded");
+        }
+        boolean startFlush;
+        long buffered;
+        lock.lock();
+        try {
+            Object key = conflationKey(message);
+            WebSocketMessage<?> replaced = key != null ? pending.remove(key) : null;
+            pending.put(key != null ? key : sequence++, message);
+            pendingBytes += message.getPayloadLength() - (replaced != null ? replaced.getPayloadLength() : 0);
+            buffered = pendingBytes;
+            startFlush = !flushing;
+            flushing = true;
+        } finally {
+            lock.unlock();
+        }
+        if (buffered > bufferSizeLimit) {
+            throw limitExceeded("Buffer size of " + buffered + " bytes exceeded");
+        }
+        if (startFlush) {
+            Thread.ofVirtual().name("ws-send-" + getId()).start(this::flush);
+        }
+    }
+
+    private void flush() {
+        while (true) {
+            WebSocketMessage<?> next;
+            lock.lock();
+            try {
+                Iterator<WebSocketMessage<?>> it = pending.values().iterator();
+                if (failed || !it.hasNext()) {
+                    flushing = false;
+                    return;
+                }
+                next = it.next();
+                it.remove();
+                pendingBytes -= next.getPayloadLength();
+            } finally {
+                lock.unlock();
+            }
+            sendStartedAt = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(next);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to send to session {}: {}", getId(), e.getMessage());
+                discard();
+                closeUnreliable();
+            } finally {
+                sendStartedAt = 0;
+            }
+        }
+    }
+
+    // The caller (SubProtocolWebSocketHandler) closes the session on this exception
+    private SessionLimitExceededException limitExceeded(String reason) {
+        log.info("Disconnecting slow session {}: {}", getId(), reason);
+        discard();
+        return new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    // Nothing more would reach the client, so it is told to reconnect instead of keeping a socket that stays silent
+    private void closeUnreliable() {
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not close session {}: {}", getId(), e.getMessage());
+        }
+    }
+
+    private void discard() {
+        failed = true;
+        lock.lock();
+        try {
+            pending.clear();
+            pendingBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // subscription + status id of a STOMP MESSAGE frame that carries the status id header, otherwise null
+    private static Object conflationKey(WebSocketMessage<?> message) {
+        String frame;
+        if (message instanceof TextMessage text) {
+            frame = text.getPayload();
+        } else if (message instanceof BinaryMessage binary) {
+            frame = headers(binary.getPayload());
+        } else {
+            return null;
+        }
+        int headersEnd = frame.indexOf("\n\n");
+        String statusId = header(frame, STATUS_ID_HEADER, headersEnd);
+        if (statusId == null) {
+            return null;
+        }
+        return header(frame, "subscription", headersEnd) + "/" + statusId;
+    }
+
+    // The command and headers of a binary frame, up to and including the blank line
+    private static String headers(ByteBuffer payload) {
+        ByteBuffer frame = payload.duplicate();
+        for (int i = frame.position(); i + 1 < frame.limit(); i++) {
+            if (frame.get(i) == '\n' && frame.get(i + 1) == '\n') {
+                frame.limit(i + 2);
+                return StandardCharsets.UTF_8.decode(frame).toString();
+            }
+        }
+        return "";
+    }
+
+    private static String header(String frame, String name, int headersEnd) {
+        int start = frame.indexOf("\n" + name + ":");
+        if (start < 0 || start > headersEnd) {
+            return null;
+        }
+        start += name.length() + 2;
+        return frame.substring(start, frame.indexOf('\n', start));
+    }
+}
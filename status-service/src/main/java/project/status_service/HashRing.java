@@ -0,0 +1,99 @@
+package project.status_service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Consistent-hash ring over node ids. Every node is placed on the ring at {@code virtualNodes} points, and a
+ * username belongs to the first {@code replicationFactor} distinct nodes found walking clockwise from its hash;
+ * the first of them is its owner. Adding or removing a node only moves the usernames next to that node's points,
+ * and every node that knows the same members builds the same ring.
+ * <p>
+ * The replica set of every point is computed when the ring is built, so a lookup is one binary search.
+ */
+final class HashRing {
+
+    private final List<String> members;
+    private final long[] hashes;
+    private final List<List<String>> replicas;
+
+    HashRing(Collection<String> members, int virtualNodes, int replicationFactor) {
+        this.members = List.copyOf(new TreeSet<>(members));
+        Point[] points = new Point[this.members.size() * virtualNodes];
+        int n = 0;
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points[n++] = new Point(hash(member + "#" + i), member);
+            }
+        }
+        Arrays.sort(points, Comparator.comparingLong(Point::hash).thenComparing(Point::member));
+        int count = Math.min(replicationFactor, this.members.size());
+        hashes = new long[points.length];
+        replicas = new ArrayList<>(points.length);
+        for (int i = 0; i < points.length; i++) {
+            hashes[i] = points[i].hash();
+            Set<String> set = new LinkedHashSet<>();
+            for (int j = i; set.size() < count; j = (j + 1) % points.length) {
+                set.add(points[j].member());
+            }
+            replicas.add(List.copyOf(set));
+        }
+    }
+
+    List<String> members() {
+        return members;
+    }
+
+    // The owner first, then the other replicas; empty for an empty ring
+    List<String> replicas(String username) {
+        if (hashes.length == 0) {
+            return List.of();
+        }
+        int i = Arrays.binarySearch(hashes, hash(username.toLowerCase(Locale.ROOT)));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return replicas.get(i == hashes.length ? 0 : i);
+    }
+
+    boolean isReplica(String member, String username) {
+        return replicas(username).contains(member);
+    }
+
+    // The members that keep at least one username together with the given one
+    Set<String> neighbors(String member) {
+        Set<String> neighbors = new TreeSet<>();
+        for (List<String> set : replicas) {
+            if (set.contains(member)) {
+                neighbors.addAll(set);
+            }
+        }
+        neighbors.remove(member);
+        return neighbors;
+    }
+
+    // FNV-1a over the UTF-16 code units, finished with the MurmurHash3 mixer so that similar keys spread out
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e26aa40fdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private record Point(long hash, String member) {
+    }
+}
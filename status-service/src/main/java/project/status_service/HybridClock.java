@@ -0,0 +1,49 @@
+package project.status_service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hybrid logical clock that stamps every local write with a version
+ * <pre>
+ *   | 41 bit milliseconds since 2025-01-01 | 12 bit logical counter |
+ * </pre>
+ * Versions issued by one node only ever grow. Every version seen from a peer is passed to {@link #observe}, so
+ * a later local write always gets a larger version than anything this node has applied, even when the clocks
+ * of the nodes drift apart. Like the ids, versions fit in 53 bits and stay exact in the frontend.
+ * <p>
+ * Two writes are ordered by version first and by the origin node id second, which makes the order total and
+ * lets every node pick the same winner ({@link #isAfter}).
+ */
+@Component
+public class HybridClock {
+
+    static final long EPOCH_MILLIS = NodeStatusIdGenerator.EPOCH_SECONDS * 1000;
+    static final int LOGICAL_BITS = 12;
+
+    private final int node;
+    private final AtomicLong last = new AtomicLong();
+
+    public HybridClock(StatusProperties statusProperties) {
+        this.node = statusProperties.getNodeId();
+    }
+
+    // Node id recorded as the origin of local writes
+    public int node() {
+        return node;
+    }
+
+    public long now() {
+        long wall = (System.currentTimeMillis() - EPOCH_MILLIS) << LOGICAL_BITS;
+        return last.updateAndGet(prev -> Math.max(prev + 1, wall));
+    }
+
+    public void observe(long version) {
+        last.accumulateAndGet(version, Math::max);
+    }
+
+    public static boolean isAfter(long version, int origin, long otherVersion, int otherOrigin) {
+        return version != otherVersion ? version > otherVersion : origin > otherOrigin;
+    }
+}
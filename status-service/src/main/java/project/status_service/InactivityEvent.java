@@ -0,0 +1,13 @@
+package project.status_service;
+
+/**
+ * Published by {@link InactivityTracker} when a user has not sent anything for
+ * {@code status.inactivity.inactive-after} ({@link Phase#INACTIVE}) or {@code status.inactivity.remove-after}
+ * ({@link Phase#EXPIRED}).
+ */
+public record InactivityEvent(String username, Phase phase) {
+
+    public enum Phase {
+        INACTIVE, EXPIRED
+    }
+}
@@ -0,0 +1,164 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline-driven inactivity timeouts. Each tracked user has one pending deadline in a {@link DelayQueue}; a
+ * single thread sleeps until the earliest one is due, so nothing runs while no user is due and each expiry
+ * costs O(log n) once.
+ * <p>
+ * Activity only records the time in the user's entry. The pending deadline is not moved on every message but
+ * re-armed lazily: when it fires, the user's last activity is checked and the deadline is pushed to the next
+ * real expiry if the user was active in the meantime.
+ * <p>
+ * Users are keyed by their lower-case username, like the other username indices, so activity under any spelling
+ * of a name moves the same deadline. Events carry the spelling the user was last active with.
+ */
+@Component
+public class InactivityTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(InactivityTracker.class);
+
+    private final ConcurrentHashMap<String, Activity> activity = new ConcurrentHashMap<>();
+    private final DelayQueue<Deadline> deadlines = new DelayQueue<>();
+
+    private final StatusProperties statusProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Timer expiryTimer;
+    private Thread worker;
+
+    public InactivityTracker(StatusProperties statusProperties, ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry) {
+        this.statusProperties = statusProperties;
+        this.eventPublisher = eventPublisher;
+        Gauge.builder("status.inactivity.tracked", activity, ConcurrentHashMap::size)
+                .description("Users whose activity is tracked")
+                .register(meterRegistry);
+        Gauge.builder("status.inactivity.deadlines", deadlines, DelayQueue::size)
+                .description("Pending deadlines, including stale ones not yet due")
+                .register(meterRegistry);
+        this.expiryTimer = StatusMetrics.cleanupTimer(meterRegistry, "inactivity");
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = Thread.ofPlatform().daemon().name("inactivity-tracker").start(this::run);
+        log.info("Inactivity tracker started");
+    }
+
+    @PreDestroy
+    public void stop() {
+        worker.interrupt();
+    }
+
+    public void touch(String username) {
+        long now = System.currentTimeMillis();
+        long inactiveAt = now + inactiveAfter();
+        activity.compute(key(username), (key, current) -> {
+            Activity next = current != null ? current : new Activity();
+            next.username = username;
+            next.lastSeen = now;
+            next.inactive = false;
+            // Only a user who had already gone inactive has a deadline later than the new one
+            if (current == null || inactiveAt < next.armedAt) {
+                arm(key, next, inactiveAt);
+            }
+            return next;
+        });
+    }
+
+    public void forget(String username) {
+        activity.remove(key(username));
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Deadline deadline = deadlines.take();
+                long start = System.nanoTime();
+                try {
+                    expire(deadline);
+                } catch (RuntimeException e) {
+                    log.error("Failed to expire {}", deadline.key(), e);
+                }
+                expiryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void expire(Deadline deadline) {
+        InactivityEvent[] fired = new InactivityEvent[1];
+        activity.compute(deadline.key(), (key, current) -> {
+            // Entries that were forgotten or re-armed since leave a stale deadline behind
+            if (current == null || current.armedAt != deadline.at()) {
+                return current;
+            }
+            long now = System.currentTimeMillis();
+            long inactiveAt = current.lastSeen + inactiveAfter();
+            long removeAt = current.lastSeen + statusProperties.getInactivity().getRemoveAfter().toMillis();
+            if (now >= removeAt) {
+                fired[0] = new InactivityEvent(current.username, InactivityEvent.Phase.EXPIRED);
+                return null;
+            }
+            if (now >= inactiveAt && !current.inactive) {
+                current.inactive = true;
+                fired[0] = new InactivityEvent(current.username, InactivityEvent.Phase.INACTIVE);
+            }
+            arm(key, current, now < inactiveAt ? inactiveAt : removeAt);
+            return current;
+        });
+        if (fired[0] != null) {
+            eventPublisher.publishEvent(fired[0]);
+        }
+    }
+
+    private void arm(String key, Activity entry, long at) {
+        entry.armedAt = at;
+        deadlines.add(new Deadline(key, at));
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private long inactiveAfter() {
+        return statusProperties.getInactivity().getInactiveAfter().toMillis();
+    }
+
+    // Mutated only inside compute() on the user's entry
+    private static class Activity {
+        String username;
+        long lastSeen;
+        boolean inactive;
+        long armedAt;
+    }
+
+    private record Deadline(String key, long at) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(at - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(at, ((Deadline) other).at);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package project.status_service;
+
+/**
+ * Published by {@link OwnershipDirectory} when the status topics this node's clients subscribe to have changed.
+ * {@code grew} is set when the node now needs changes it was not getting before.
+ */
+public record InterestEvent(SubscriptionInterest interest, boolean grew) {
+}
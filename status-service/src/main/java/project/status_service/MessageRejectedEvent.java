@@ -0,0 +1,8 @@
+package project.status_service;
+
+/**
+ * Published when an inbound STOMP message is dropped before reaching a handler; the session is told why on
+ * {@code /user/queue/errors}.
+ */
+public record MessageRejectedEvent(String sessionId, String reason) {
+}
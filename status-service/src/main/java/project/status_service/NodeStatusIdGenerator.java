@@ -0,0 +1,71 @@
+package project.status_service;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default {@link StatusIdGenerator}: node-partitioned ids made of
+ * <pre>
+ *   | 31 bit seconds since 2025-01-01 | 8 bit node id | 14 bit sequence |
+ * </pre>
+ * The node id comes from {@code status.node-id} ({@code STATUS_SERVICE_NUMBER}), so two nodes can never
+ * produce the same id. The whole id fits in 53 bits and stays exact as a JavaScript number in the frontend.
+ * <p>
+ * Seconds and sequence are packed into a single {@link AtomicLong} and advanced with CAS, so the hot path
+ * allocates nothing. When more than 16384 ids are requested within one second the generator borrows from the
+ * following second instead of blocking; the clock catches up once the burst is over.
+ * <p>
+ * A restarted node would start again from the current second and could repeat ids issued shortly before the
+ * restart, or borrowed from later seconds during a burst. Every id of this node that is restored from the
+ * journal or replicated back from a peer is therefore passed to {@link #observe}, which moves the generator
+ * past it.
+ */
+@Component
+public class NodeStatusIdGenerator implements StatusIdGenerator {
+
+    static final long EPOCH_SECONDS = Instant.parse("2025-01-01T00:00:00Z").getEpochSecond();
+    static final int NODE_BITS = 8;
+    static final int SEQUENCE_BITS = 14;
+    static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private static final long NODE_MASK = (long) MAX_NODE_ID << SEQUENCE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeBits;
+    // (seconds since EPOCH_SECONDS << SEQUENCE_BITS) | sequence of the last issued id
+    private final AtomicLong last = new AtomicLong();
+
+    public NodeStatusIdGenerator(StatusProperties statusProperties) {
+        int nodeId = statusProperties.getNodeId();
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("status.node-id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+    }
+
+    @Override
+    public long nextId() {
+        long floor = (System.currentTimeMillis() / 1000 - EPOCH_SECONDS) << SEQUENCE_BITS;
+        long prev;
+        long next;
+        do {
+            prev = last.get();
+            next = Math.max(prev + 1, floor);
+        } while (!last.compareAndSet(prev, next));
+
+        long seconds = next >>> SEQUENCE_BITS;
+        long sequence = next & SEQUENCE_MASK;
+        return (seconds << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | sequence;
+    }
+
+    @Override
+    public void observe(long id) {
+        if ((id & NODE_MASK) != nodeBits) {
+            return;
+        }
+        long issued = ((id >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | (id & SEQUENCE_MASK);
+        last.accumulateAndGet(issued, Math::max);
+    }
+}
@@ -0,0 +1,289 @@
+package project.status_service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Ownership mode ({@code status.ownership.enabled}): decides which peers a change has to reach, so that
+ * replication traffic grows with the replication factor and the number of nodes with subscribers rather than
+ * with every pair of nodes.
+ * <p>
+ * Usernames are mapped onto a {@link HashRing} of this node and its peers, rebuilt whenever the
+ * {@link PeerRegistry} reports a change. A status change goes to the owner and replicas of its username and to
+ * every peer whose clients subscribe to a topic the change is published on. Each node tracks the status topics of
+ * its own clients and pushes a summary ({@link SubscriptionInterest}) to all peers when it changes, to a peer
+ * that joins, and every {@code interest-refresh-interval}. A peer whose interest is not known yet gets every
+ * change.
+ * <p>
+ * Anti-entropy follows the same rule: a node that asks a peer for its digest or changes passes its id, and both
+ * sides only compare the statuses that both of them keep, as a replica or for their subscribers
+ * ({@link #filterFor}); the rest is not the peer's to repair. It runs
+ * periodically with the peers that share usernames with this node, with all peers when a peer leaves or this
+ * node's clients start subscribing to topics it was not getting ({@link InterestEvent}). Deletes carry only an
+ * id; the username is known for deletes made on this node, and a delete recovered from the outbox goes to every
+ * peer.
+ */
+@Component
+public class OwnershipDirectory {
+
+    private static final Logger log = LoggerFactory.getLogger(OwnershipDirectory.class);
+
+    private final PeerRegistry peerRegistry;
+    private final PeerClient peerClient;
+    private final StatusProperties statusProperties;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // session id -> subscription id -> group or ALL_GROUPS, only for subscriptions to status topics
+    private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+    // group or ALL_GROUPS -> number of local subscriptions
+    private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+    // peer id -> the topics its clients subscribe to
+    private final Map<String, SubscriptionInterest> remote = new ConcurrentHashMap<>();
+    private final AtomicBoolean announcing = new AtomicBoolean();
+    private volatile SubscriptionInterest local = new SubscriptionInterest(null, false, Set.of());
+    private volatile HashRing ring;
+
+    public OwnershipDirectory(PeerRegistry peerRegistry, PeerClient peerClient, StatusProperties statusProperties,
+            ApplicationEventPublisher eventPublisher) {
+        this.peerRegistry = peerRegistry;
+        this.peerClient = peerClient;
+        this.statusProperties = statusProperties;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public boolean isEnabled() {
+        return statusProperties.getOwnership().isEnabled();
+    }
+
+    // Runs before the other listeners, so they already see the new ring
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void handlePeer(PeerEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        rebuild();
+        if (event.change() == PeerEvent.Change.JOINED) {
+            publish(event.peer().url(), interest());
+        } else {
+            remote.remove(event.peer().id());
+        }
+    }
+
+    /**
+     * Whether a change has to be sent to the peer: it is a replica of the username, its clients subscribe to the
+     * change's topics, or either is unknown.
+     */
+    public boolean shouldReplicate(String peer, ReplicationOp op) {
+        String username = op.getUsername();
+        if (username == null || ring().isReplica(peer, username)) {
+            return true;
+        }
+        SubscriptionInterest interest = remote.get(peer);
+        if (interest == null) {
+            return true;
+        }
+        return op.getStatus() != null ? interest.wants(op.getStatus().getGroup()) : !interest.isEmpty();
+    }
+
+    // The owner of the username first, then its other replicas
+    public List<String> owners(String username) {
+        return ring().replicas(username);
+    }
+
+    /**
+     * The statuses that both this node and the given one keep, being a replica or having subscribers for them,
+     * which is what anti-entropy between the two compares. Null for all statuses, when ownership mode is off or
+     * no node is given.
+     */
+    public Predicate<Status> filterFor(String node) {
+        if (!isEnabled() || node == null) {
+            return null;
+        }
+        HashRing current = ring();
+        Predicate<Status> ours = keeps(current, peerRegistry.selfId(), local);
+        Predicate<Status> theirs = keeps(current, node, remote.get(node));
+        if (ours == null || theirs == null) {
+            return ours != null ? ours : theirs;
+        }
+        return ours.and(theirs);
+    }
+
+    // URLs of the peers to sync with periodically: those sharing usernames, all of them if clients subscribe
+    public List<String> syncPartners() {
+        if (!local.isEmpty()) {
+            return peerRegistry.urls();
+        }
+        return ring().neighbors(peerRegistry.selfId()).stream()
+                .map(peerRegistry::url)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public void apply(SubscriptionInterest interest) {
+        if (interest.getNode() != null) {
+            remote.put(interest.getNode(), interest);
+        }
+    }
+
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String group = StatusGroups.groupOf(accessor.getDestination());
+        if (group == null) {
+            return;
+        }
+        String previous = subscriptions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), group);
+        if (previous == null) {
+            increment(group);
+        }
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String[] removed = new String[1];
+        subscriptions.computeIfPresent(accessor.getSessionId(), (id, groups) -> {
+            removed[0] = groups.remove(accessor.getSubscriptionId());
+            return groups.isEmpty() ? null : groups;
+        });
+        if (removed[0] != null) {
+            decrement(removed[0]);
+        }
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        Map<String, String> groups = subscriptions.remove(event.getSessionId());
+        if (groups != null) {
+            groups.values().forEach(this::decrement);
+        }
+    }
+
+    // Renews this node's interest on all peers, in case an earlier push did not arrive
+    @Scheduled(fixedDelayString = "${status.ownership.interest-refresh-interval:30s}")
+    public void refresh() {
+        if (!isEnabled()) {
+            return;
+        }
+        SubscriptionInterest interest = interest();
+        for (String peer : peerRegistry.urls()) {
+            publish(peer, interest);
+        }
+    }
+
+    public Stats stats(String username) {
+        HashRing current = ring();
+        return new Stats(isEnabled(), peerRegistry.selfId(), current.members(),
+                new ArrayList<>(current.neighbors(peerRegistry.selfId())), interest(), Map.copyOf(remote),
+                username != null ? current.replicas(username) : null);
+    }
+
+    public record Stats(boolean enabled, String self, List<String> members, List<String> syncPartners,
+            SubscriptionInterest interest, Map<String, SubscriptionInterest> peers, List<String> owners) {
+    }
+
+    private void increment(String group) {
+        if (counts.merge(group, 1, Integer::sum) == 1) {
+            interestChanged();
+        }
+    }
+
+    private void decrement(String group) {
+        if (counts.computeIfPresent(group, (key, count) -> count > 1 ? count - 1 : null) == null) {
+            interestChanged();
+        }
+    }
+
+    // Announces off the subscribing thread; changes during an announcement lead to another one
+    private void interestChanged() {
+        if (announcing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("interest").start(this::announce);
+        }
+    }
+
+    private void announce() {
+        announcing.set(false);
+        SubscriptionInterest previous = local;
+        SubscriptionInterest current = new SubscriptionInterest(peerRegistry.selfId(),
+                counts.containsKey(StatusGroups.ALL_GROUPS),
+                counts.keySet().stream().filter(group -> !group.equals(StatusGroups.ALL_GROUPS))
+                        .collect(Collectors.toUnmodifiableSet()));
+        if (current.isAll() == previous.isAll() && current.getGroups().equals(previous.getGroups())) {
+            return;
+        }
+        local = current;
+        log.debug("Clients subscribe to all statuses: {}, groups: {}", current.isAll(), current.getGroups());
+        // Peers have to know the new interest before the sync it triggers asks them for it
+        CompletableFuture.allOf(peerRegistry.urls().stream()
+                .map(peer -> publish(peer, current))
+                .toArray(CompletableFuture[]::new)).join();
+        eventPublisher.publishEvent(new InterestEvent(current, current.exceeds(previous)));
+    }
+
+    // Null when the node keeps every status; a node whose interest is not known yet counts as without subscribers
+    private static Predicate<Status> keeps(HashRing ring, String node, SubscriptionInterest interest) {
+        if (interest != null && interest.isAll()) {
+            return null;
+        }
+        return status -> ring.isReplica(node, status.getUsername())
+                || interest != null && interest.wants(status.getGroup());
+    }
+
+    private SubscriptionInterest interest() {
+        SubscriptionInterest current = local;
+        return new SubscriptionInterest(peerRegistry.selfId(), current.isAll(), current.getGroups());
+    }
+
+    private CompletableFuture<Void> publish(String peer, SubscriptionInterest interest) {
+        return peerClient.publishInterest(peer, interest).exceptionally(e -> {
+            log.warn("Failed to send interest to {}: {}", peer, e.getMessage());
+            return null;
+        });
+    }
+
+    private HashRing ring() {
+        HashRing current = ring;
+        return current != null ? current : rebuild();
+    }
+
+    private synchronized HashRing rebuild() {
+        List<String> members = new ArrayList<>();
+        members.add(peerRegistry.selfId());
+        peerRegistry.peers().forEach(peer -> members.add(peer.id()));
+        StatusProperties.Ownership config = statusProperties.getOwnership();
+        ring = new HashRing(members, config.getVirtualNodes(), config.getReplicationFactor());
+        return ring;
+    }
+}
@@ -0,0 +1,238 @@
+package project.status_service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shared transport for every call to a peer status node. All calls go through one {@link HttpClient}, so
+ * connections are kept alive and reused, and connect/read timeouts apply everywhere. The number of requests in
+ * flight per peer is capped by {@code status.http.max-connections-per-peer}; further calls wait in a per-peer
+ * queue instead of opening more connections.
+ * <p>
+ * Replication bodies are sent as {@value StatusCodec#MEDIA_TYPE} when {@code status.replication.binary} is set.
+ * A peer that answers 415 does not know the format yet; it gets JSON from then on.
+ */
+@Component
+public class PeerClient {
+
+    private static final Logger log = LoggerFactory.getLogger(PeerClient.class);
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final StatusProperties statusProperties;
+    private final Map<String, PeerLimiter> limiters = new ConcurrentHashMap<>();
+    private final Set<String> jsonOnlyPeers = ConcurrentHashMap.newKeySet();
+
+    public PeerClient(ObjectMapper objectMapper, StatusProperties statusProperties) {
+        this.objectMapper = objectMapper;
+        this.statusProperties = statusProperties;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(statusProperties.getHttp().getConnectTimeout())
+                .build();
+    }
+
+    public CompletableFuture<Void> replicateBatch(String peer, List<ReplicationOp> ops) {
+        return post(peer, "/status/replicate/batch", ops, () -> StatusCodec.encodeBatch(ops));
+    }
+
+    public CompletableFuture<Void> publishPresence(String peer, List<PresenceEvent> events) {
+        return send(peer, request(peer, "/status/presence")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(toJson(events)))
+                .build(), Void.class);
+    }
+
+    public CompletableFuture<Void> publishInterest(String peer, SubscriptionInterest interest) {
+        return send(peer, request(peer, "/status/interest")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(toJson(interest)))
+                .build(), Void.class);
+    }
+
+    // node, when given, asks the peer for only the statuses that node keeps
+    public CompletableFuture<StatusChanges> fetchChanges(String peer, long since, int limit, String node) {
+        String query = "?since=" + since + "&limit=" + limit + nodeParam("&", node);
+        return send(peer, request(peer, "/status/changes" + query).GET().build(), StatusChanges.class);
+    }
+
+    public CompletableFuture<StatusDigest> fetchDigest(String peer, long root, String node) {
+        return send(peer, request(peer, "/status/digest?root=" + root + nodeParam("&", node)).GET().build(),
+                StatusDigest.class);
+    }
+
+    public CompletableFuture<StatusChanges> fetchBuckets(String peer, int[] buckets, String node) {
+        return send(peer, request(peer, "/status/digest/buckets" + nodeParam("?", node))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(toJson(buckets)))
+                .build(), StatusChanges.class);
+    }
+
+    // Posts the binary encoding unless disabled or unsupported by the peer, JSON otherwise
+    private CompletableFuture<Void> post(String peer, String path, Object body, Supplier<byte[]> binary) {
+        if (!statusProperties.getReplication().isBinary() || jsonOnlyPeers.contains(peer)) {
+            return postJson(peer, path, body);
+        }
+        return send(peer, request(peer, path)
+                .header("Content-Type", StatusCodec.MEDIA_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(binary.get()))
+                .build(), Void.class)
+                .exceptionallyCompose(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof PeerRequestException rejected && rejected.getStatusCode() == 415) {
+                        log.info("{} does not accept {}, replicating as JSON", peer, StatusCodec.MEDIA_TYPE);
+                        jsonOnlyPeers.add(peer);
+                        return postJson(peer, path, body);
+                    }
+                    return CompletableFuture.failedFuture(e);
+                });
+    }
+
+    private CompletableFuture<Void> postJson(String peer, String path, Object body) {
+        return send(peer, request(peer, path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(toJson(body)))
+                .build(), Void.class);
+    }
+
+    @EventListener
+    public void handlePeer(PeerEvent event) {
+        if (event.change() == PeerEvent.Change.LEFT) {
+            limiters.remove(event.peer().url());
+            jsonOnlyPeers.remove(event.peer().url());
+        }
+    }
+
+    private static String nodeParam(String separator, String node) {
+        return node != null ? separator + "node=" + URLEncoder.encode(node, StandardCharsets.UTF_8) : "";
+    }
+
+    private HttpRequest.Builder request(String peer, String path) {
+        return HttpRequest.newBuilder(URI.create(peer + path))
+                .timeout(statusProperties.getHttp().getReadTimeout());
+    }
+
+    private <T> CompletableFuture<T> send(String peer, HttpRequest request, Class<T> responseType) {
+        PeerLimiter limiter = limiters.computeIfAbsent(peer,
+                p -> new PeerLimiter(statusProperties.getHttp().getMaxConnectionsPerPeer()));
+        return limiter.submit(() -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> fromResponse(request, response, responseType)));
+    }
+
+    private <T> T fromResponse(HttpRequest request, HttpResponse<byte[]> response, Class<T> responseType) {
+        if (response.statusCode() / 100 != 2) {
+            throw new PeerRequestException(request.method() + " " + request.uri() + " returned "
+                    + response.statusCode(), response.statusCode());
+        }
+        if (responseType == Void.class || response.body().length == 0) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(response.body(), responseType);
+        } catch (IOException e) {
+            throw new PeerRequestException("Unreadable response from " + request.uri() + ": " + e.getMessage());
+        }
+    }
+
+    private byte[] toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize " + body, e);
+        }
+    }
+
+    public static class PeerRequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        public PeerRequestException(String message) {
+            this(message, 0);
+        }
+
+        public PeerRequestException(String message, int statusCode) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        // The HTTP status the peer answered with, 0 if there was no response
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    // Caps the number of in-flight requests to one peer; excess calls are started as earlier ones complete
+    private static class PeerLimiter {
+        private final int maxInFlight;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+        PeerLimiter(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            waiting.add(() -> {
+                CompletableFuture<T> future;
+                try {
+                    future = call.get();
+                } catch (RuntimeException e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+                future.whenComplete((value, error) -> {
+                    inFlight.decrementAndGet();
+                    drain();
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            });
+            drain();
+            return result;
+        }
+
+        private void drain() {
+            while (!waiting.isEmpty()) {
+                int current = inFlight.get();
+                if (current >= maxInFlight) {
+                    return;
+                }
+                if (!inFlight.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                Runnable next = waiting.poll();
+                if (next == null) {
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+                next.run();
+            }
+        }
+    }
+}
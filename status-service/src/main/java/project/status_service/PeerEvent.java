@@ -0,0 +1,12 @@
+package project.status_service;
+
+/**
+ * Published by {@link PeerRegistry} when a peer appears ({@link Change#JOINED}) or disappears
+ * ({@link Change#LEFT}).
+ */
+public record PeerEvent(PeerRegistry.Peer peer, Change change) {
+
+    public enum Change {
+        JOINED, LEFT
+    }
+}
@@ -0,0 +1,169 @@
+package project.status_service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.URI;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The other status nodes, as the instances of this service registered in Eureka plus any static
+ * {@code status.peers}. A peer is identified by its instance id (static peers by their URL), so a node that comes
+ * back at another address keeps its replication cursor. This node is recognised by its own instance id; without
+ * a registration (Eureka disabled), and for static URLs, by an address of this host with this node's port.
+ * <p>
+ * The discovery client caches the registry; this list is rebuilt from that cache every
+ * {@code status.discovery.refresh-interval}, starting right after startup. Differences to the previous list are
+ * published as {@link PeerEvent}s, which start replication and a sync for a new peer and stop them for one that
+ * is gone.
+ */
+@Component
+public class PeerRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(PeerRegistry.class);
+
+    private final DiscoveryClient discoveryClient;
+    private final ObjectProvider<Registration> registration;
+    private final StatusProperties statusProperties;
+    private final ApplicationEventPublisher events;
+
+    @Value("${spring.application.name}")
+    private String applicationName;
+
+    @Value("${server.port}")
+    private int currentPort;
+
+    private volatile Map<String, Peer> peers = Map.of();
+    private volatile String selfId;
+
+    public PeerRegistry(DiscoveryClient discoveryClient, ObjectProvider<Registration> registration,
+            StatusProperties statusProperties, ApplicationEventPublisher events) {
+        this.discoveryClient = discoveryClient;
+        this.registration = registration;
+        this.statusProperties = statusProperties;
+        this.events = events;
+    }
+
+    public Collection<Peer> peers() {
+        return peers.values();
+    }
+
+    public List<String> urls() {
+        return peers.values().stream().map(Peer::url).toList();
+    }
+
+    /**
+     * The id under which the other nodes know this one: the instance id of its registration, or the static peer
+     * URL that points here. Without either, no other node lists this one, and any stable name will do.
+     */
+    public String selfId() {
+        if (selfId == null) {
+            Registration self = registration.getIfAvailable();
+            selfId = self != null ? self.getInstanceId() : statusProperties.getPeers().stream()
+                    .filter(this::isSelf)
+                    .findFirst()
+                    .orElse("node-" + statusProperties.getNodeId());
+        }
+        return selfId;
+    }
+
+    // The current address of a peer, or null once it left
+    public String url(String id) {
+        Peer peer = peers.get(id);
+        return peer != null ? peer.url() : null;
+    }
+
+    // The id of the peer at the given address, or null if there is none
+    public String idOf(String url) {
+        return peers.values().stream()
+                .filter(peer -> peer.url().equals(url))
+                .map(Peer::id)
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Scheduled(fixedDelayString = "${status.discovery.refresh-interval:10s}")
+    public synchronized void refresh() {
+        Map<String, Peer> current = new LinkedHashMap<>();
+        for (String url : statusProperties.getPeers()) {
+            if (!isSelf(url)) {
+                current.put(url, new Peer(url, url));
+            }
+        }
+        try {
+            discovered().forEach(peer -> current.putIfAbsent(peer.id(), peer));
+        } catch (RuntimeException e) {
+            // Keep the last known peers rather than dropping all of them while the registry is unreachable
+            log.warn("Discovery failed, keeping {} known peers: {}", peers.size(), e.getMessage());
+            return;
+        }
+
+        Map<String, Peer> previous = peers;
+        peers = Map.copyOf(current);
+        previous.forEach((id, peer) -> {
+            if (!current.containsKey(id)) {
+                log.info("Peer left: {}", peer);
+                events.publishEvent(new PeerEvent(peer, PeerEvent.Change.LEFT));
+            }
+        });
+        current.forEach((id, peer) -> {
+            Peer before = previous.get(id);
+            if (before == null) {
+                log.info("Peer joined: {}", peer);
+                events.publishEvent(new PeerEvent(peer, PeerEvent.Change.JOINED));
+            } else if (!before.url().equals(peer.url())) {
+                // Same node at a new address; callers look the address up by id, so nothing else changes
+                log.info("Peer moved: {} {} -> {}", id, before.url(), peer.url());
+            }
+        });
+    }
+
+    private List<Peer> discovered() {
+        String serviceId = statusProperties.getDiscovery().getServiceId() != null
+                ? statusProperties.getDiscovery().getServiceId() : applicationName;
+        Registration self = registration.getIfAvailable();
+        String selfId = self != null ? self.getInstanceId() : null;
+        return discoveryClient.getInstances(serviceId).stream()
+                .filter(instance -> selfId != null ? !selfId.equals(instance.getInstanceId())
+                        : !isSelf(instance.getUri().toString()))
+                .map(instance -> new Peer(id(instance), instance.getUri().toString()))
+                .toList();
+    }
+
+    private static String id(ServiceInstance instance) {
+        return instance.getInstanceId() != null ? instance.getInstanceId() : instance.getUri().toString();
+    }
+
+    private boolean isSelf(String url) {
+        URI uri = URI.create(url);
+        int port = uri.getPort() != -1 ? uri.getPort() : "https".equals(uri.getScheme()) ? 443 : 80;
+        if (port != currentPort) {
+            return false;
+        }
+        try {
+            InetAddress address = InetAddress.getByName(uri.getHost());
+            return address.isLoopbackAddress() || address.isAnyLocalAddress()
+                    || NetworkInterface.getByInetAddress(address) != null;
+        } catch (IOException e) {
+            // Unresolvable, so it cannot be this node
+            return false;
+        }
+    }
+
+    public record Peer(String id, String url) {
+    }
+}
@@ -0,0 +1,181 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Which node owns which username, kept locally on every node so that ownership checks never leave the process.
+ * <p>
+ * A node claims a username once, when a session starts using it, and releases it when the session ends. Both
+ * are pushed to all peers as {@link PresenceEvent}s. Remote claims are leases: every node re-sends its claims
+ * every {@code status.presence.refresh-interval}, and a claim that was not renewed within
+ * {@code status.presence.lease} is treated as free, so a crashed node does not hold usernames forever.
+ * <p>
+ * If two nodes claim the same username concurrently, the earlier claim by {@link HybridClock} version wins on
+ * every node; the losing node publishes a {@link PresenceLostEvent} for the session that has to give it up.
+ */
+@Component
+public class PresenceDirectory {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceDirectory.class);
+
+    private final ConcurrentHashMap<String, Claim> claims = new ConcurrentHashMap<>();
+
+    private final HybridClock clock;
+    private final PeerClient peerClient;
+    private final PeerRegistry peerRegistry;
+    private final StatusProperties statusProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Timer refreshTimer;
+
+    public PresenceDirectory(HybridClock clock, PeerClient peerClient, PeerRegistry peerRegistry,
+            StatusProperties statusProperties, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.clock = clock;
+        this.peerClient = peerClient;
+        this.peerRegistry = peerRegistry;
+        this.statusProperties = statusProperties;
+        this.eventPublisher = eventPublisher;
+        Gauge.builder("status.presence.claims", claims, Map::size)
+                .description("Usernames claimed by any node, including released claims until their lease ends")
+                .register(meterRegistry);
+        this.refreshTimer = StatusMetrics.cleanupTimer(meterRegistry, "presence");
+    }
+
+    /**
+     * Claims the username for this node.
+     *
+     * @return false if another node holds a live claim on it
+     */
+    public boolean claim(String username) {
+        Claim[] created = new Claim[1];
+        Claim result = claims.compute(key(username), (key, current) -> {
+            if (isLive(current)) {
+                return current;
+            }
+            created[0] = new Claim(username, clock.node(), clock.now(), false, Long.MAX_VALUE);
+            return created[0];
+        });
+        if (created[0] != null) {
+            publish(List.of(created[0].toEvent()));
+        }
+        return result.node() == clock.node();
+    }
+
+    public void release(String username) {
+        Claim[] released = new Claim[1];
+        claims.computeIfPresent(key(username), (key, current) -> {
+            if (current.released() || current.node() != clock.node()) {
+                return current;
+            }
+            released[0] = new Claim(current.username(), clock.node(), clock.now(), true, leaseEnd());
+            return released[0];
+        });
+        if (released[0] != null) {
+            publish(List.of(released[0].toEvent()));
+        }
+    }
+
+    public boolean isClaimedLocally(String username) {
+        Claim claim = claims.get(key(username));
+        return claim != null && !claim.released() && claim.node() == clock.node();
+    }
+
+    // Applies claims and releases pushed by a peer
+    public void apply(List<PresenceEvent> events) {
+        for (PresenceEvent event : events) {
+            clock.observe(event.getVersion());
+            Claim[] lost = new Claim[1];
+            claims.compute(key(event.getUsername()), (key, current) -> {
+                Claim next = merge(current, event);
+                if (next != current && current != null && !current.released() && current.node() == clock.node()) {
+                    lost[0] = current;
+                }
+                return next;
+            });
+            if (lost[0] != null) {
+                log.info("Username '{}' was claimed earlier on node {}", lost[0].username(), event.getNode());
+                eventPublisher.publishEvent(new PresenceLostEvent(lost[0].username(), event.getNode()));
+            }
+        }
+    }
+
+    // Renews this node's claims on all peers and forgets remote claims whose lease ran out
+    @Scheduled(fixedDelayString = "${status.presence.refresh-interval:10s}")
+    public void refresh() {
+        long start = System.nanoTime();
+        List<PresenceEvent> own = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        claims.forEach((key, claim) -> {
+            if (claim.expiresAt() < now) {
+                claims.remove(key, claim);
+            } else if (!claim.released() && claim.node() == clock.node()) {
+                own.add(claim.toEvent());
+            }
+        });
+        if (!own.isEmpty()) {
+            publish(own);
+        }
+        refreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Claim merge(Claim current, PresenceEvent event) {
+        boolean release = event.getType() == PresenceEvent.Type.RELEASE;
+        Claim incoming = new Claim(event.getUsername(), event.getNode(), event.getVersion(), release, leaseEnd());
+        if (current == null || current.expiresAt() < System.currentTimeMillis()) {
+            return incoming;
+        }
+        if (current.node() == event.getNode()) {
+            // Same owner: the later event wins, a renewed claim extends the lease
+            return event.getVersion() >= current.version() ? incoming : current;
+        }
+        if (release || !isLive(current)) {
+            return release ? current : incoming;
+        }
+        // Two live claims from different nodes: the earlier one keeps the username everywhere
+        return HybridClock.isAfter(current.version(), current.node(), event.getVersion(), event.getNode())
+                ? incoming : current;
+    }
+
+    private boolean isLive(Claim claim) {
+        return claim != null && !claim.released() && claim.expiresAt() >= System.currentTimeMillis();
+    }
+
+    private long leaseEnd() {
+        return System.currentTimeMillis() + statusProperties.getPresence().getLease().toMillis();
+    }
+
+    private void publish(List<PresenceEvent> events) {
+        for (String peer : peerRegistry.urls()) {
+            peerClient.publishPresence(peer, events).exceptionally(e -> {
+                log.warn("Failed to notify {} of presence: {}", peer, e.getMessage());
+                return null;
+            });
+        }
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    // Local claims never expire; remote claims and releases expire at the end of their lease
+    private record Claim(String username, int node, long version, boolean released, long expiresAt) {
+
+        PresenceEvent toEvent() {
+            return new PresenceEvent(released ? PresenceEvent.Type.RELEASE : PresenceEvent.Type.CLAIM, username,
+                    node, version);
+        }
+    }
+}
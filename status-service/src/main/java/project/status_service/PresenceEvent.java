@@ -0,0 +1,58 @@
+package project.status_service;
+
+/**
+ * A change of username ownership pushed to peers with {@code POST /status/presence}: a node claiming a username
+ * for one of its sessions or releasing it again. Claims are also re-sent periodically to renew their lease.
+ */
+public class PresenceEvent {
+
+    public enum Type {
+        CLAIM, RELEASE
+    }
+
+    private Type type;
+    private String username;
+    private int node;
+    private long version;
+
+    public PresenceEvent() {}
+
+    public PresenceEvent(Type type, String username, int node, long version) {
+        this.type = type;
+        this.username = username;
+        this.node = node;
+        this.version = version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    public void setNode(int node) {
+        this.node = node;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
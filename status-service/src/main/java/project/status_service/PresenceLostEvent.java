@@ -0,0 +1,8 @@
+package project.status_service;
+
+/**
+ * Published when a username claimed by this node turns out to have been claimed earlier on another node, so
+ * the local session using it has to give it up.
+ */
+public record PresenceLostEvent(String username, int owner) {
+}
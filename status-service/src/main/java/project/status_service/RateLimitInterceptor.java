@@ -0,0 +1,123 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for {@code /app/status} on the client inbound channel. Every message has to get a token from
+ * the bucket of its session and, once the session has claimed a username, from the bucket of that username, so a
+ * client cannot get around the limit by reconnecting. Rejected messages never reach the controller; the session
+ * gets one error per streak of rejections rather than one per message.
+ * <p>
+ * Buckets that have refilled completely are swept once a minute, which keeps the maps as small as the set of
+ * recently active clients.
+ */
+@Component
+public class RateLimitInterceptor implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitInterceptor.class);
+
+    static final String LIMITED_DESTINATION = "/app/status";
+
+    private final Map<String, TokenBucket> sessionBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> usernameBuckets = new ConcurrentHashMap<>();
+    // Sessions that were already told they are being limited
+    private final Set<String> notified = ConcurrentHashMap.newKeySet();
+    private final LongAdder rejectedBySession = new LongAdder();
+    private final LongAdder rejectedByUsername = new LongAdder();
+
+    private final StatusProperties statusProperties;
+    private final SessionRegistry sessionRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Timer sweepTimer;
+
+    public RateLimitInterceptor(StatusProperties statusProperties, SessionRegistry sessionRegistry,
+            ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.statusProperties = statusProperties;
+        this.sessionRegistry = sessionRegistry;
+        this.eventPublisher = eventPublisher;
+        this.sweepTimer = StatusMetrics.cleanupTimer(meterRegistry, "rate-limit");
+        FunctionCounter.builder("status.ratelimit.rejected", rejectedBySession, LongAdder::sum)
+                .description("Messages to /app/status rejected by a rate limit")
+                .tag("scope", "session")
+                .register(meterRegistry);
+        FunctionCounter.builder("status.ratelimit.rejected", rejectedByUsername, LongAdder::sum)
+                .description("Messages to /app/status rejected by a rate limit")
+                .tag("scope", "username")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StatusProperties.RateLimit config = statusProperties.getRateLimit();
+        if (!config.isEnabled()) {
+            return message;
+        }
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || !LIMITED_DESTINATION.equals(SimpMessageHeaderAccessor.getDestination(headers))) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (!sessionBuckets.computeIfAbsent(sessionId, id -> newBucket(config)).tryAcquire()) {
+            rejectedBySession.increment();
+            return reject(sessionId);
+        }
+        String username = sessionRegistry.usernameOf(sessionId);
+        if (username != null && !usernameBuckets
+                .computeIfAbsent(username.toLowerCase(Locale.ROOT), name -> newBucket(config)).tryAcquire()) {
+            rejectedByUsername.increment();
+            return reject(sessionId);
+        }
+        notified.remove(sessionId);
+        return message;
+    }
+
+    public Stats stats() {
+        return new Stats(sessionBuckets.size(), usernameBuckets.size(), rejectedBySession.sum(),
+                rejectedByUsername.sum());
+    }
+
+    @Scheduled(fixedRate = 60_000)
+    public void sweep() {
+        long now = System.nanoTime();
+        sessionBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        usernameBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        notified.removeIf(sessionId -> !sessionBuckets.containsKey(sessionId));
+        sweepTimer.record(System.nanoTime() - now, TimeUnit.NANOSECONDS);
+    }
+
+    private Message<?> reject(String sessionId) {
+        if (notified.add(sessionId)) {
+            log.info("Dropping messages from rate limited session {}", sessionId);
+            eventPublisher.publishEvent(new MessageRejectedEvent(sessionId, "Too many status updates, slow down."));
+        }
+        return null;
+    }
+
+    private static TokenBucket newBucket(StatusProperties.RateLimit config) {
+        return new TokenBucket(config.getRate(), config.getBurst());
+    }
+
+    public record Stats(int sessions, int usernames, long rejectedBySession, long rejectedByUsername) {
+    }
+}
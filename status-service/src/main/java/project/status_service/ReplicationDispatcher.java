@@ -0,0 +1,231 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers local changes to peers in the background. Changes are appended to the {@link ReplicationOutbox};
+ * every peer has a single drain thread that reads from its own outbox cursor, so changes reach a peer in the
+ * order they were made while a slow or dead peer only delays itself.
+ * <p>
+ * Once a change is pending, the drain thread waits up to {@code status.replication.batch-window} for more
+ * (at most {@code batch-size}) and sends them in one {@code POST /status/replicate/batch}. The outbox keeps only
+ * the newest change per id, so bursts are coalesced. A failed batch is retried with exponential backoff
+ * between {@code retry-backoff} and {@code max-retry-backoff}; the cursor only advances on success.
+ * <p>
+ * Workers follow the {@link PeerRegistry}: one starts when a peer joins and stops when it leaves, releasing the
+ * peer's cursor so the outbox no longer keeps changes for it. The cursor is only released once the worker has
+ * ended, so a batch still in flight cannot bring it back. Cursors are keyed by peer id, and every batch is
+ * sent to the peer's current address.
+ * <p>
+ * Each worker registers meters tagged with the peer id, which are removed again when the peer leaves. Only the
+ * first failure of a streak is logged as a warning, the retries that follow at debug level, so a dead peer does
+ * not flood the log.
+ * <p>
+ * In ownership mode the {@link OwnershipDirectory} decides per change whether the peer needs it; changes it does
+ * not need are skipped, and the cursor moves past them as if they had been sent.
+ */
+@Component
+public class ReplicationDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationDispatcher.class);
+
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(5);
+
+    private final PeerClient peerClient;
+    private final PeerRegistry peerRegistry;
+    private final OwnershipDirectory ownership;
+    private final ReplicationOutbox outbox;
+    private final StatusProperties statusProperties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, PeerWorker> workers = new ConcurrentHashMap<>();
+
+    public ReplicationDispatcher(PeerClient peerClient, PeerRegistry peerRegistry, OwnershipDirectory ownership,
+            ReplicationOutbox outbox, StatusProperties statusProperties, MeterRegistry meterRegistry) {
+        this.peerClient = peerClient;
+        this.peerRegistry = peerRegistry;
+        this.ownership = ownership;
+        this.outbox = outbox;
+        this.statusProperties = statusProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener
+    public void handlePeer(PeerEvent event) {
+        String peer = event.peer().id();
+        if (event.change() == PeerEvent.Change.JOINED) {
+            outbox.register(peer);
+            workers.computeIfAbsent(peer, PeerWorker::new);
+        } else {
+            PeerWorker worker = workers.remove(peer);
+            if (worker != null) {
+                worker.stop();
+            }
+            outbox.unregister(peer);
+        }
+    }
+
+    public void replicate(Status status) {
+        outbox.append(ReplicationOp.upsert(status));
+    }
+
+    // username is the owner of the deleted status, or null if this node did not have it
+    public void replicateDelete(Tombstone tombstone, String username) {
+        outbox.append(ReplicationOp.delete(tombstone, username));
+    }
+
+    public List<PeerStats> stats() {
+        return workers.values().stream().map(PeerWorker::stats).toList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.values().forEach(PeerWorker::stop);
+    }
+
+    public record PeerStats(String peer, long queueDepth, long lagMillis, long lastLatencyMillis,
+            long delivered, long failed, long skipped) {
+    }
+
+    private class PeerWorker {
+        private final String peer;
+        private final Thread worker;
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private volatile long lastLatencyMillis;
+        private final Timer latency;
+        private final List<Meter> meters;
+
+        PeerWorker(String peer) {
+            this.peer = peer;
+            this.latency = Timer.builder("status.replication.latency")
+                    .description("Time from a local change to its acknowledgement by the peer")
+                    .tag("peer", peer)
+                    .register(meterRegistry);
+            this.meters = List.of(latency,
+                    FunctionCounter.builder("status.replication.delivered", delivered, AtomicLong::get)
+                            .description("Changes acknowledged by the peer")
+                            .tag("peer", peer)
+                            .register(meterRegistry),
+                    FunctionCounter.builder("status.replication.failures", failed, AtomicLong::get)
+                            .description("Changes in batches the peer did not acknowledge")
+                            .tag("peer", peer)
+                            .register(meterRegistry),
+                    FunctionCounter.builder("status.replication.skipped", skipped, AtomicLong::get)
+                            .description("Changes the peer neither keeps nor has subscribers for")
+                            .tag("peer", peer)
+                            .register(meterRegistry),
+                    Gauge.builder("status.replication.queue", this, w -> outbox.pending(w.peer))
+                            .description("Changes waiting to be delivered or retried")
+                            .tag("peer", peer)
+                            .register(meterRegistry),
+                    TimeGauge.builder("status.replication.lag", this, TimeUnit.MILLISECONDS, PeerWorker::lagMillis)
+                            .description("Age of the oldest undelivered change")
+                            .tag("peer", peer)
+                            .register(meterRegistry));
+            this.worker = Thread.ofVirtual().name("replication-" + peer).start(this::drain);
+        }
+
+        private void drain() {
+            StatusProperties.Replication config = statusProperties.getReplication();
+            long backoff = config.getRetryBackoff().toMillis();
+            int failures = 0;
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long cursor = outbox.cursor(peer);
+                    if (!outbox.awaitAfter(cursor, 1, TimeUnit.SECONDS)) {
+                        continue;
+                    }
+                    if (outbox.pending(peer) < config.getBatchSize()) {
+                        // Give a burst the chance to coalesce into one request
+                        Thread.sleep(config.getBatchWindow().toMillis());
+                    }
+                    ReplicationOutbox.Batch batch = outbox.read(cursor, config.getBatchSize());
+                    if (batch.ops().isEmpty()) {
+                        continue;
+                    }
+                    List<ReplicationOp> ops = ownership.isEnabled()
+                            ? batch.ops().stream().filter(op -> ownership.shouldReplicate(peer, op)).toList()
+                            : batch.ops();
+                    if (ops.isEmpty()) {
+                        outbox.ack(peer, batch.lastSeq());
+                        skipped.addAndGet(batch.ops().size());
+                        continue;
+                    }
+                    String url = peerRegistry.url(peer);
+                    if (url == null) {
+                        return;
+                    }
+                    try {
+                        // get() rather than join(), so that stop() can interrupt the wait
+                        peerClient.replicateBatch(url, ops).get();
+                        outbox.ack(peer, batch.lastSeq());
+                        delivered.addAndGet(ops.size());
+                        skipped.addAndGet(batch.ops().size() - ops.size());
+                        lastLatencyMillis = System.currentTimeMillis() - ops.get(0).getEnqueuedAt();
+                        latency.record(lastLatencyMillis, TimeUnit.MILLISECONDS);
+                        backoff = config.getRetryBackoff().toMillis();
+                        if (failures > 0) {
+                            log.info("Replication to {} recovered after {} failed attempts", peer, failures);
+                            failures = 0;
+                        }
+                    } catch (ExecutionException | RuntimeException e) {
+                        failed.addAndGet(ops.size());
+                        if (failures++ == 0) {
+                            log.warn("Could not replicate {} changes to {}, retrying in {} ms: {}",
+                                    ops.size(), peer, backoff, e.getMessage());
+                        } else {
+                            log.debug("Retry {} of {} changes to {} failed, retrying in {} ms: {}",
+                                    failures, ops.size(), peer, backoff, e.getMessage());
+                        }
+                        Thread.sleep(backoff);
+                        backoff = Math.min(backoff * 2, config.getMaxRetryBackoff().toMillis());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        PeerStats stats() {
+            return new PeerStats(peer, outbox.pending(peer), lagMillis(), lastLatencyMillis, delivered.get(),
+                    failed.get(), skipped.get());
+        }
+
+        long lagMillis() {
+            long oldest = outbox.oldestPendingAt(peer);
+            return oldest > 0 ? System.currentTimeMillis() - oldest : 0;
+        }
+
+        // Returns once the worker has ended, or after STOP_TIMEOUT
+        void stop() {
+            worker.interrupt();
+            meters.forEach(meterRegistry::remove);
+            try {
+                if (!worker.join(STOP_TIMEOUT)) {
+                    log.warn("Replication worker for {} did not stop within {}", peer, STOP_TIMEOUT);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
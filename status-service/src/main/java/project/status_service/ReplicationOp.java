@@ -0,0 +1,99 @@
+package project.status_service;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+
+/**
+ * A single change queued for delivery to a peer: either an upsert of a status or the deletion of an id. A delete
+ * carries the version and origin of its tombstone; an upsert carries them inside the status.
+ * Batches of these are the body of {@code POST /status/replicate/batch}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReplicationOp {
+
+    public enum Type {
+        UPSERT, DELETE
+    }
+
+    private final Type type;
+    private final Long id;
+    private final Status status;
+    private final Long version;
+    private final Integer origin;
+    private final long enqueuedAt;
+    // Only known for deletes made on this node; neither sent to peers nor written to the outbox
+    private final String deletedUsername;
+
+    @JsonCreator
+    private ReplicationOp(@JsonProperty("type") Type type, @JsonProperty("id") Long id,
+            @JsonProperty("status") Status status, @JsonProperty("version") Long version,
+            @JsonProperty("origin") Integer origin) {
+        this(type, id, status, version, origin, System.currentTimeMillis());
+    }
+
+    ReplicationOp(Type type, Long id, Status status, Long version, Integer origin, long enqueuedAt) {
+        this(type, id, status, version, origin, enqueuedAt, null);
+    }
+
+    private ReplicationOp(Type type, Long id, Status status, Long version, Integer origin, long enqueuedAt,
+            String deletedUsername) {
+        this.type = type;
+        this.id = id;
+        this.status = status;
+        this.version = version;
+        this.origin = origin;
+        this.enqueuedAt = enqueuedAt;
+        this.deletedUsername = deletedUsername;
+    }
+
+    public static ReplicationOp upsert(Status status) {
+        return new ReplicationOp(Type.UPSERT, status.getId(), status, null, null);
+    }
+
+    // username is the owner of the deleted status, or null if it is not known
+    public static ReplicationOp delete(Tombstone tombstone, String username) {
+        return new ReplicationOp(Type.DELETE, tombstone.getId(), null, tombstone.getVersion(),
+                tombstone.getOrigin(), System.currentTimeMillis(), username);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Integer getOrigin() {
+        return origin;
+    }
+
+    // The tombstone a delete stands for; ops from peers that predate versioning delete with version 0
+    @JsonIgnore
+    public Tombstone getTombstone() {
+        return new Tombstone(id, LocalDateTime.now(), version != null ? version : 0, origin != null ? origin : 0);
+    }
+
+    // The username the change belongs to, or null for a delete whose username is not known
+    @JsonIgnore
+    public String getUsername() {
+        return status != null ? status.getUsername() : deletedUsername;
+    }
+
+    @JsonIgnore
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+}
@@ -0,0 +1,353 @@
+package project.status_service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable log of changes waiting to be replicated, shared by all peers.
+ * <p>
+ * Every change is appended to a memory-mapped file of at most {@code status.outbox.max-size} bytes and gets
+ * a sequence number. Only the newest change per status id is kept live, so a peer that was down replays each
+ * id at most once. Each peer has a cursor (the last sequence it acknowledged) that is persisted next to the
+ * log; on restart the log is replayed into memory and delivery resumes from those cursors. A peer without a
+ * cursor starts at the newest change, as it gets everything older through anti-entropy when it joins.
+ * <p>
+ * Record layout: {@code int length | long seq | long enqueuedAt | op}, the op encoded with
+ * {@link StatusCodec#writeOp}. When the file is full it is
+ * rewritten with just the live records; if they still do not fit, the oldest changes are dropped and peers
+ * that had not received them yet must resync.
+ */
+@Component
+public class ReplicationOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationOutbox.class);
+
+    private static final String LOG_FILE = "outbox.log";
+    private static final String CURSOR_FILE = "cursors.properties";
+
+    private final Path directory;
+    private final int maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    // seq -> change, newest change per id only
+    private final ConcurrentSkipListMap<Long, ReplicationOp> live = new ConcurrentSkipListMap<>();
+    // id -> seq of its live change, guarded by lock
+    private final Map<Long, Long> seqById = new HashMap<>();
+    private final Map<String, Long> cursors = new ConcurrentHashMap<>();
+    private final Set<String> registeredPeers = ConcurrentHashMap.newKeySet();
+    private final StatusCodec.Writer writer = new StatusCodec.Writer(256);
+
+    private FileChannel channel;
+    private MappedByteBuffer log;
+    private volatile long headSeq;
+    private volatile boolean dirty;
+
+    public ReplicationOutbox(StatusProperties statusProperties) {
+        this.directory = Path.of(statusProperties.getOutbox().getDirectory());
+        this.maxBytes = (int) Math.min(Integer.MAX_VALUE, statusProperties.getOutbox().getMaxSize().toBytes());
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        mapLog(directory.resolve(LOG_FILE));
+        recover();
+        loadCursors();
+        // Sequence numbers must keep growing even if the log was compacted down to nothing
+        headSeq = Math.max(headSeq, cursors.values().stream().mapToLong(Long::longValue).max().orElse(0));
+        logger.info("Recovered {} pending changes from {}", live.size(), directory);
+    }
+
+    public long append(ReplicationOp op) {
+        lock.lock();
+        try {
+            long seq = headSeq + 1;
+            encode(seq, op);
+            if (log.remaining() < writer.size() + 4) {
+                compact(writer.size() + 4);
+                encode(seq, op);
+            }
+            writeRecord();
+            headSeq = seq;
+            Long previous = seqById.put(op.getId(), seq);
+            if (previous != null) {
+                live.remove(previous);
+            }
+            live.put(seq, op);
+            dirty = true;
+            appended.signalAll();
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until there is a change after {@code cursor} or the timeout expires.
+     */
+    public boolean awaitAfter(long cursor, long timeout, TimeUnit unit) throws InterruptedException {
+        if (headSeq > cursor) {
+            return true;
+        }
+        lock.lock();
+        try {
+            long nanos = unit.toNanos(timeout);
+            while (headSeq <= cursor) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = appended.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Batch read(long cursor, int max) {
+        List<ReplicationOp> ops = new ArrayList<>(Math.min(max, 64));
+        long last = cursor;
+        for (Map.Entry<Long, ReplicationOp> entry : live.tailMap(cursor, false).entrySet()) {
+            if (ops.size() >= max) {
+                break;
+            }
+            ops.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new Batch(ops, last);
+    }
+
+    public void register(String peer) {
+        registeredPeers.add(peer);
+        if (cursors.putIfAbsent(peer, headSeq) == null) {
+            dirty = true;
+        }
+    }
+
+    // Stops keeping changes for a peer that is gone; it catches up through anti-entropy if it comes back
+    public void unregister(String peer) {
+        registeredPeers.remove(peer);
+        cursors.remove(peer);
+        dirty = true;
+        prune();
+    }
+
+    public long cursor(String peer) {
+        return cursors.getOrDefault(peer, 0L);
+    }
+
+    // Ignored for a peer that was unregistered, so a late acknowledgement cannot bring its cursor back
+    public void ack(String peer, long seq) {
+        if (cursors.computeIfPresent(peer, (p, cursor) -> Math.max(cursor, seq)) == null) {
+            return;
+        }
+        dirty = true;
+        prune();
+    }
+
+    // Changes after the peer's cursor, including superseded ones
+    public long pending(String peer) {
+        return Math.max(0, headSeq - cursor(peer));
+    }
+
+    public long oldestPendingAt(String peer) {
+        Map.Entry<Long, ReplicationOp> next = live.higherEntry(cursor(peer));
+        return next != null ? next.getValue().getEnqueuedAt() : 0;
+    }
+
+    public record Batch(List<ReplicationOp> ops, long lastSeq) {
+    }
+
+    // Forgets changes every registered peer has acknowledged
+    private void prune() {
+        long min = registeredPeers.stream().mapToLong(this::cursor).min().orElse(0);
+        if (live.isEmpty() || live.firstKey() > min) {
+            return;
+        }
+        lock.lock();
+        try {
+            Map<Long, ReplicationOp> acknowledged = live.headMap(min, true);
+            acknowledged.forEach((seq, op) -> seqById.remove(op.getId(), seq));
+            acknowledged.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        lock.lock();
+        try {
+            log.force();
+        } finally {
+            lock.unlock();
+        }
+        storeCursors();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        dirty = true;
+        flush();
+        channel.close();
+    }
+
+    private void encode(long seq, ReplicationOp op) {
+        writer.reset();
+        writer.writeLong(seq);
+        writer.writeLong(op.getEnqueuedAt());
+        StatusCodec.writeOp(op, writer);
+    }
+
+    // Writes the encoded record; the length goes in last so a torn write is never read back as a record
+    private void writeRecord() {
+        int start = log.position();
+        log.position(start + 4);
+        log.put(writer.array(), 0, writer.size());
+        log.putInt(start, writer.size());
+    }
+
+    private void recover() {
+        while (log.remaining() >= 4) {
+            int start = log.position();
+            int length = log.getInt();
+            if (length <= 0 || length > log.remaining()) {
+                log.position(start);
+                break;
+            }
+            try {
+                ByteBuffer record = log.slice(log.position(), length);
+                long seq = record.getLong();
+                long enqueuedAt = record.getLong();
+                ReplicationOp op = StatusCodec.readOp(record, enqueuedAt);
+                Long previous = seqById.put(op.getId(), seq);
+                if (previous != null) {
+                    live.remove(previous);
+                }
+                live.put(seq, op);
+                headSeq = Math.max(headSeq, seq);
+            } catch (RuntimeException e) {
+                logger.warn("Stopping recovery at corrupt record: {}", e.toString());
+                log.position(start);
+                break;
+            }
+            log.position(start + 4 + length);
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live changes. If they take more than three quarters of the file, the oldest
+     * ones are dropped so that appends do not immediately trigger another compaction.
+     */
+    private void compact(int needed) {
+        prune();
+        int budget = (int) Math.min(maxBytes * 3L / 4, maxBytes - needed);
+        List<Long> kept = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<Long, ReplicationOp> entry : live.descendingMap().entrySet()) {
+            encode(entry.getKey(), entry.getValue());
+            if (size + writer.size() + 4 > budget) {
+                break;
+            }
+            size += writer.size() + 4;
+            kept.add(entry.getKey());
+        }
+        long oldestKept = kept.isEmpty() ? headSeq + 1 : kept.get(kept.size() - 1);
+        Map<Long, ReplicationOp> dropped = live.headMap(oldestKept, false);
+        if (!dropped.isEmpty()) {
+            logger.warn("Outbox full, dropping {} oldest changes; lagging peers need a resync", dropped.size());
+            dropped.forEach((seq, op) -> seqById.remove(op.getId(), seq));
+            dropped.clear();
+        }
+
+        Path logFile = directory.resolve(LOG_FILE);
+        Path tmp = directory.resolve(LOG_FILE + ".tmp");
+        try {
+            Files.deleteIfExists(tmp);
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer compacted = out.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+                MappedByteBuffer current = log;
+                log = compacted;
+                live.forEach((seq, op) -> {
+                    encode(seq, op);
+                    writeRecord();
+                });
+                log.force();
+                log = current;
+            }
+            int position = size;
+            Files.move(tmp, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            channel.close();
+            mapLog(logFile);
+            log.position(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not compact replication outbox", e);
+        }
+    }
+
+    private void mapLog(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        log = channel.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+    }
+
+    private void loadCursors() throws IOException {
+        Path file = directory.resolve(CURSOR_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        properties.forEach((peer, seq) -> cursors.put((String) peer, Long.parseLong((String) seq)));
+    }
+
+    private void storeCursors() {
+        Properties properties = new Properties();
+        cursors.forEach((peer, seq) -> properties.setProperty(peer, Long.toString(seq)));
+        Path tmp = directory.resolve(CURSOR_FILE + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "Last replicated outbox sequence per peer");
+            }
+            Files.move(tmp, directory.resolve(CURSOR_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Could not store cursors: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Two-way index between WebSocket sessions and the usernames they use on this node, with O(1) lookups in both
+ * directions. A username belongs to at most one session and a session uses at most one username.
+ * <p>
+ * Every change to a session runs inside {@code compute} on that session's entry, and changes to a username
+ * run inside {@code compute} on the username's entry, so the two maps cannot drift apart. Sessions leave the
+ * registry when they disconnect or when their user is removed for inactivity.
+ */
+@Component
+public class SessionRegistry {
+
+    // session id -> username
+    private final ConcurrentHashMap<String, String> usernames = new ConcurrentHashMap<>();
+    // normalized (lower-case) username -> session id
+    private final ConcurrentHashMap<String, String> sessions = new ConcurrentHashMap<>();
+
+    public SessionRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("status.presence.sessions", usernames, Map::size)
+                .description("Sessions on this node that use a username")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Binds the username to the session, replacing the session's previous username.
+     *
+     * @return false if another session already uses the username
+     */
+    public boolean claim(String sessionId, String username) {
+        boolean[] claimed = new boolean[1];
+        usernames.compute(sessionId, (id, previous) -> {
+            String holder = sessions.compute(key(username),
+                    (key, current) -> current == null ? sessionId : current);
+            if (!holder.equals(sessionId)) {
+                return previous;
+            }
+            if (previous != null && !key(previous).equals(key(username))) {
+                sessions.remove(key(previous), sessionId);
+            }
+            claimed[0] = true;
+            return username;
+        });
+        return claimed[0];
+    }
+
+    /**
+     * Removes the session.
+     *
+     * @return the username it used, or null
+     */
+    public String release(String sessionId) {
+        String[] released = new String[1];
+        usernames.computeIfPresent(sessionId, (id, username) -> {
+            sessions.remove(key(username), sessionId);
+            released[0] = username;
+            return null;
+        });
+        return released[0];
+    }
+
+    /**
+     * Removes whichever session uses the username.
+     *
+     * @return that session's id, or null
+     */
+    public String releaseUsername(String username) {
+        String sessionId = sessions.get(key(username));
+        return sessionId != null && release(sessionId) != null ? sessionId : null;
+    }
+
+    public String usernameOf(String sessionId) {
+        return usernames.get(sessionId);
+    }
+
+    public String sessionOf(String username) {
+        return sessions.get(key(username));
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
@@ -7,6 +7,11 @@ public class Status {
     private String username;
     private String statustext;
     private LocalDateTime timestamp;
+    // Hybrid logical clock version and node id of the write, see HybridClock
+    private long version;
+    private int origin;
+    // Optional team or dashboard the status belongs to, see StatusGroups
+    private String group;
 
     public Status() {}
 
@@ -17,6 +22,12 @@ public class Status {
         this.timestamp = timestamp;
     }
 
+    public Status(Long id, String username, String statustext, LocalDateTime timestamp, long version, int origin) {
+        this(id, username, statustext, timestamp);
+        this.version = version;
+        this.origin = origin;
+    }
+
     public Long getId() {
         return id;
     }
@@ -48,4 +59,28 @@ public class Status {
     public void setTimestamp(LocalDateTime timestamp) {
         this.timestamp = timestamp;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public int getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(int origin) {
+        this.origin = origin;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
 }
@@ -0,0 +1,166 @@
+package project.status_service;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bookkeeping behind incremental sync, owned by {@link StatusService}.
+ * <p>
+ * Every change to an id gets the next local sequence number; {@link #changes} holds the latest sequence per id,
+ * so "everything since X" is a range scan over the ids that actually changed. Deleted ids are remembered as
+ * {@link Tombstone}s until they are pruned. The digest keeps one XOR of content hashes per id bucket, updated in
+ * O(1) per change, so two nodes can find the buckets they disagree on without comparing entries. A digest over
+ * only some of the statuses, for a peer that keeps only those, is computed from the store instead.
+ * <p>
+ * {@link #upserted} and {@link #deleted} must be called while the store holds the lock of the id.
+ */
+class StatusChangeLog {
+
+    static final int BUCKETS = 1024;
+
+    private final long epoch = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+    private final AtomicLong seq = new AtomicLong();
+    // seq -> id, latest seq per id only
+    private final ConcurrentSkipListMap<Long, Long> changes = new ConcurrentSkipListMap<>();
+    private final Map<Long, Long> seqById = new ConcurrentHashMap<>();
+    private final Map<Long, Tombstone> tombstones = new ConcurrentHashMap<>();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    // Highest sequence of a pruned tombstone; deltas from before it would miss deletes
+    private volatile long prunedUpTo;
+
+    void upserted(Status previous, Status current) {
+        tombstones.remove(current.getId());
+        touch(current.getId());
+        updateDigest(current.getId(), hash(previous) ^ hash(current));
+    }
+
+    // previous is null when the id was deleted before this node saw it
+    void deleted(Status previous, Tombstone tombstone) {
+        tombstones.put(tombstone.getId(), tombstone);
+        touch(tombstone.getId());
+        updateDigest(tombstone.getId(), hash(previous));
+    }
+
+    Tombstone tombstone(Long id) {
+        return tombstones.get(id);
+    }
+
+    Map<Long, Tombstone> tombstones() {
+        return tombstones;
+    }
+
+    // Forgets a tombstone; must be called while the store holds the lock of the id
+    void prune(Tombstone tombstone) {
+        if (tombstones.remove(tombstone.getId(), tombstone)) {
+            Long removed = seqById.remove(tombstone.getId());
+            if (removed != null) {
+                changes.remove(removed);
+                prunedUpTo = Math.max(prunedUpTo, removed);
+            }
+        }
+    }
+
+    // Statuses not matching the filter (null for all) are skipped; tombstones are always included
+    StatusChanges since(long since, int limit, Function<Long, Status> lookup, Predicate<Status> filter) {
+        StatusChanges page = new StatusChanges();
+        page.setEpoch(epoch);
+        if (since < prunedUpTo) {
+            since = 0;
+        }
+        long last = since;
+        for (Map.Entry<Long, Long> change : changes.tailMap(since, false).entrySet()) {
+            if (page.getStatuses().size() + page.getDeleted().size() >= limit) {
+                page.setMore(true);
+                break;
+            }
+            Status status = lookup.apply(change.getValue());
+            if (status != null) {
+                if (filter == null || filter.test(status)) {
+                    page.getStatuses().add(status);
+                }
+            } else {
+                Tombstone tombstone = tombstones.get(change.getValue());
+                if (tombstone != null) {
+                    page.getDeleted().add(tombstone);
+                }
+            }
+            last = change.getKey();
+        }
+        page.setSeq(last);
+        return page;
+    }
+
+    long epoch() {
+        return epoch;
+    }
+
+    long seq() {
+        return seq.get();
+    }
+
+    StatusDigest digest() {
+        long current = seq.get();
+        long[] values = new long[BUCKETS];
+        long root = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            values[i] = buckets.get(i);
+            root ^= values[i];
+        }
+        return new StatusDigest(epoch, current, root, values);
+    }
+
+    // The digest the given statuses would have on their own, taken by hashing each of them
+    StatusDigest digest(Iterable<Status> statuses) {
+        long current = seq.get();
+        long[] values = new long[BUCKETS];
+        long root = 0;
+        for (Status status : statuses) {
+            long hash = hash(status);
+            values[bucketOf(status.getId())] ^= hash;
+            root ^= hash;
+        }
+        return new StatusDigest(epoch, current, root, values);
+    }
+
+    static int bucketOf(Long id) {
+        return (int) (mix(id) & (BUCKETS - 1));
+    }
+
+    private void touch(Long id) {
+        long next = seq.incrementAndGet();
+        Long previous = seqById.put(id, next);
+        if (previous != null) {
+            changes.remove(previous);
+        }
+        changes.put(next, id);
+    }
+
+    private void updateDigest(Long id, long delta) {
+        buckets.accumulateAndGet(bucketOf(id), delta, (a, b) -> a ^ b);
+    }
+
+    private static long hash(Status status) {
+        if (status == null) {
+            return 0;
+        }
+        return mix(status.getId() * 31 + Objects.hash(status.getUsername(), status.getStatustext(),
+                status.getTimestamp(), status.getVersion(), status.getOrigin(), status.getGroup()));
+    }
+
+    // MurmurHash3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53e94fbL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
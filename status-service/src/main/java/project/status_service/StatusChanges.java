@@ -0,0 +1,58 @@
+package project.status_service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of changes from a node's change log, as returned by {@code GET /status/changes} and
+ * {@code POST /status/digest/buckets}.
+ */
+public class StatusChanges {
+    // Identifies one run of the sending node; sequence numbers restart when it changes
+    private long epoch;
+    // Change sequence of the last entry in this page; pass it as "since" to get the next page
+    private long seq;
+    private boolean more;
+    private List<Status> statuses = new ArrayList<>();
+    private List<Tombstone> deleted = new ArrayList<>();
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public boolean isMore() {
+        return more;
+    }
+
+    public void setMore(boolean more) {
+        this.more = more;
+    }
+
+    public List<Status> getStatuses() {
+        return statuses;
+    }
+
+    public void setStatuses(List<Status> statuses) {
+        this.statuses = statuses;
+    }
+
+    public List<Tombstone> getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(List<Tombstone> deleted) {
+        this.deleted = deleted;
+    }
+}
@@ -0,0 +1,230 @@
+package project.status_service;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a {@link Status}: unsigned varints for numbers and lengths, UTF-8 for strings.
+ * <pre>
+ *   varlong id | string username | string statustext | varint flag, [zigzag varlong seconds, varint nanos]
+ *   | varlong version | varint origin | string group
+ * </pre>
+ * Strings are written as {@code varint (length + 1)} followed by the bytes, {@code 0} meaning null. The timestamp
+ * is stored as its seconds and nanos on the UTC time-line, which round-trips a {@link LocalDateTime} exactly.
+ * Fields added later come last and are optional when reading: a status that ends right after the timestamp reads
+ * back with version 0, so it loses against every versioned write, and one that ends after the origin has no group.
+ * A missing field is only detected at the end of the buffer, so only a status or op that ends its buffer may leave
+ * fields out. That holds for journal and outbox records, which are framed one per slice; within a batch every op
+ * carries all fields.
+ * <p>
+ * A {@link ReplicationOp} is {@code byte type | varlong id | body}, the body being the status for upserts and
+ * {@code varlong version | varint origin} for deletes. A batch is {@code varint count} followed by its ops.
+ * Peers exchange these as {@value #MEDIA_TYPE} instead of JSON.
+ */
+public final class StatusCodec {
+
+    public static final String MEDIA_TYPE = "application/x-status";
+
+    private StatusCodec() {
+    }
+
+    public static byte[] encode(Status status) {
+        Writer writer = new Writer(64);
+        write(status, writer);
+        return writer.toByteArray();
+    }
+
+    public static void write(Status status, Writer out) {
+        out.writeVarLong(status.getId());
+        out.writeString(status.getUsername());
+        out.writeString(status.getStatustext());
+        LocalDateTime timestamp = status.getTimestamp();
+        if (timestamp == null) {
+            out.writeVarLong(0);
+        } else {
+            out.writeVarLong(1);
+            out.writeVarLong(zigzag(timestamp.toEpochSecond(ZoneOffset.UTC)));
+            out.writeVarLong(timestamp.getNano());
+        }
+        out.writeVarLong(status.getVersion());
+        out.writeVarLong(status.getOrigin());
+        out.writeString(status.getGroup());
+    }
+
+    public static Status read(ByteBuffer in) {
+        Status status = new Status();
+        status.setId(readVarLong(in));
+        status.setUsername(readString(in));
+        status.setStatustext(readString(in));
+        if (readVarLong(in) != 0) {
+            long seconds = unzigzag(readVarLong(in));
+            int nanos = (int) readVarLong(in);
+            status.setTimestamp(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+        }
+        if (in.hasRemaining()) {
+            status.setVersion(readVarLong(in));
+            status.setOrigin((int) readVarLong(in));
+        }
+        if (in.hasRemaining()) {
+            status.setGroup(readString(in));
+        }
+        return status;
+    }
+
+    public static void writeOp(ReplicationOp op, Writer out) {
+        out.writeByte(op.getType().ordinal());
+        out.writeVarLong(op.getId());
+        if (op.getType() == ReplicationOp.Type.UPSERT) {
+            write(op.getStatus(), out);
+        } else {
+            out.writeVarLong(op.getVersion());
+            out.writeVarLong(op.getOrigin());
+        }
+    }
+
+    // A delete without version, as journaled before versioning, reads back with version 0
+    public static ReplicationOp readOp(ByteBuffer in, long enqueuedAt) {
+        ReplicationOp.Type type = ReplicationOp.Type.values()[in.get()];
+        long id = readVarLong(in);
+        Status status = null;
+        Long version = null;
+        Integer origin = null;
+        if (type == ReplicationOp.Type.UPSERT) {
+            status = read(in);
+        } else if (in.hasRemaining()) {
+            version = readVarLong(in);
+            origin = (int) readVarLong(in);
+        }
+        return new ReplicationOp(type, id, status, version, origin, enqueuedAt);
+    }
+
+    public static byte[] encodeBatch(List<ReplicationOp> ops) {
+        Writer writer = new Writer(64 * ops.size() + 8);
+        writer.writeVarLong(ops.size());
+        for (ReplicationOp op : ops) {
+            writeOp(op, writer);
+        }
+        return writer.toByteArray();
+    }
+
+    public static List<ReplicationOp> readBatch(ByteBuffer in) {
+        int count = (int) readVarLong(in);
+        List<ReplicationOp> ops = new ArrayList<>(Math.min(count, 4096));
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            ops.add(readOp(in, now));
+        }
+        return ops;
+    }
+
+    public static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    // A length beyond the end of the buffer is rejected before anything is allocated for it
+    public static String readString(ByteBuffer in) {
+        long encoded = readVarLong(in);
+        if (encoded == 0) {
+            return null;
+        }
+        if (encoded < 0 || encoded - 1 > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[(int) (encoded - 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Growable byte buffer with varint helpers. Reusable through {@link #reset()}.
+     */
+    public static final class Writer {
+        private byte[] buf;
+        private int size;
+
+        public Writer(int initialCapacity) {
+            this.buf = new byte[initialCapacity];
+        }
+
+        public void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        public void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        public void writeLong(long value) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buf[size++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        public void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        public void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, size, length);
+            size += length;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        public void reset() {
+            size = 0;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+}
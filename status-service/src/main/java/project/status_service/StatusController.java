@@ -1,43 +1,63 @@
 package project.status_service;
 
-import jakarta.annotation.PostConstruct;
-import org.springframework.beans.factory.annotation.Value;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @RestController
 @RequestMapping("/status")
 public class StatusController {
 
+    private static final Logger log = LoggerFactory.getLogger(StatusController.class);
+
+    private static final int MAX_PAGE_SIZE = 10_000;
+
     private WebSocketStatusController ws;
     private StatusProperties statusProperties;
     private StatusService statusService;
-    private final Map<String, List<Status>> replicationErrorQueue = new ConcurrentHashMap<>();
-
-    @Value("${server.port}")
-    private String currentPort;
+    private ReplicationDispatcher replicationDispatcher;
+    private PresenceDirectory presenceDirectory;
+    private OwnershipDirectory ownershipDirectory;
+    private RateLimitInterceptor rateLimitInterceptor;
+    private ObjectMapper objectMapper;
 
     public StatusController(WebSocketStatusController ws, StatusProperties statusProperties,
-            StatusService statusService) {
+            StatusService statusService, ReplicationDispatcher replicationDispatcher,
+            PresenceDirectory presenceDirectory, OwnershipDirectory ownershipDirectory,
+            RateLimitInterceptor rateLimitInterceptor, ObjectMapper objectMapper) {
         this.ws = ws;
         this.statusProperties = statusProperties;
         this.statusService = statusService;
+        this.replicationDispatcher = replicationDispatcher;
+        this.presenceDirectory = presenceDirectory;
+        this.ownershipDirectory = ownershipDirectory;
+        this.rateLimitInterceptor = rateLimitInterceptor;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
     public ResponseEntity<Void> create(@RequestBody StatusRequest statusRequest) {
+        if (!StatusGroups.isValid(statusRequest.getGroup())) {
+            return ResponseEntity.badRequest().build();
+        }
         Status status = statusService.saveOrUpdate(statusRequest);
-        System.out.println("[CREATE] Received via REST: " + status.getUsername() + ", " + status.getStatustext() + ", "
-                + status.getTimestamp());
-        replicateToPeers(status);
+        log.debug("Created via REST: {}, {}, {}", status.getUsername(), status.getStatustext(), status.getTimestamp());
         ws.broadcastStatus(status);
+        replicateToPeers(status);
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
@@ -47,16 +67,20 @@ public class StatusController {
         if (oldStatus == null) {
             return ResponseEntity.notFound().build();
         }
+        if (!StatusGroups.isValid(statusRequest.getGroup())) {
+            return ResponseEntity.badRequest().build();
+        }
 
         Status newStatus = statusService.update(id, statusRequest);
-        System.out.printf("[UPDATE] ID: %d, %s: '%s' -> '%s'%n",
-                id,
-                oldStatus.getUsername(),
-                oldStatus.getStatustext(),
+        if (newStatus == null) {
+            // Another status already has this username
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        log.debug("Updated ID {}, {}: '{}' -> '{}'", id, oldStatus.getUsername(), oldStatus.getStatustext(),
                 newStatus.getStatustext());
 
-        replicateToPeers(newStatus);
         ws.broadcastStatus(newStatus);
+        replicateToPeers(newStatus);
         return ResponseEntity.ok().build();
     }
 
@@ -68,130 +92,177 @@ public class StatusController {
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable Long id) {
-        statusService.delete(id);
-        System.out.println("[DELETE] ID: " + id + " deleted");
-        sendDeleteToPeers(id);
-        ws.broadcastDelete(id);
+        Status existing = statusService.get(id);
+        Tombstone tombstone = statusService.delete(id);
+        log.debug("Deleted ID {}", id);
+        ws.broadcastDelete(id, existing);
+        sendDeleteToPeers(tombstone, existing != null ? existing.getUsername() : null);
         return ResponseEntity.ok().build();
     }
 
-    @GetMapping("/all")
-    public List<Status> all() {
-        return statusService.all();
+    /**
+     * All statuses as one JSON array, written straight from the store instead of a copy of it. With limit, returns
+     * the page of statuses with an id greater than after, ordered by id, plus a next link while more may follow.
+     * The ETag changes with every change to the store, so unchanged polls get a 304 without reading it.
+     */
+    @GetMapping(value = "/all", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> all(@RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit, WebRequest request) {
+        return stream(after, limit, request, MediaType.APPLICATION_JSON, false);
+    }
+
+    // Same as all(), one status per line, so clients can process it as it arrives
+    @GetMapping(value = "/all", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> allNdjson(@RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit, WebRequest request) {
+        return stream(after, limit, request, MediaType.APPLICATION_NDJSON, true);
     }
 
+    // This node replicates through /replicate/batch; the single-change endpoints stay for peers that do not yet
     @PostMapping("/replicate")
     public ResponseEntity<Void> replicate(@RequestBody Status status) {
-        statusService.replicate(status);
-        System.out.println("[REPLICATE] Received from peer: " + status.getUsername() + ", " + status.getStatustext()
-                + ", " + status.getTimestamp());
+        if (!statusService.replicate(status)) {
+            return ResponseEntity.ok().build();
+        }
+        log.debug("Replicated from peer: {}, {}, {}", status.getUsername(), status.getStatustext(),
+                status.getTimestamp());
         ws.broadcastStatus(status);
         return ResponseEntity.ok().build();
     }
 
     @DeleteMapping("/replicate/{id}")
-    public ResponseEntity<Void> replicateDelete(@PathVariable Long id) {
-        statusService.replicateDelete(id);
-        System.out.println("[REPLICATE DELETE] ID: " + id + " removed via peer");
-        ws.broadcastDelete(id);
+    public ResponseEntity<Void> replicateDelete(@PathVariable Long id,
+            @RequestParam(defaultValue = "0") long version, @RequestParam(defaultValue = "0") int origin) {
+        Status removed = statusService.replicateDelete(new Tombstone(id, LocalDateTime.now(), version, origin));
+        if (removed == null) {
+            return ResponseEntity.ok().build();
+        }
+        log.debug("Deleted ID {} via peer", id);
+        ws.broadcastDelete(removed);
         return ResponseEntity.ok().build();
     }
 
-    private void replicateToPeers(Status status) {
-        for (String peer : statusProperties.getPeers()) {
-            try {
-                System.out.println("Replicating to " + peer);
-                if (peer.contains(currentPort)) {
-                    continue;
-                }
-
-                new RestTemplate().postForObject(peer + "/status/replicate", status, Void.class);
-            } catch (Exception e) {
-                System.err.println("Failed to replicate to " + peer + ": " + e.getMessage());
-                // Store the status in the error queue for later retry
-                replicationErrorQueue.putIfAbsent(peer, new java.util.ArrayList<>());
-                System.err.println("Storing status in error queue for " + peer);
-                List<Status> peerQueue = replicationErrorQueue.get(peer);
-                if (!peerQueue.contains(status)) {
-                    peerQueue.add(status);
+    @PostMapping("/replicate/batch")
+    public ResponseEntity<Void> replicateBatch(@RequestBody List<ReplicationOp> ops) {
+        int applied = 0;
+        for (ReplicationOp op : ops) {
+            if (op.getType() == ReplicationOp.Type.UPSERT) {
+                if (statusService.replicate(op.getStatus())) {
+                    ws.broadcastStatus(op.getStatus());
+                    applied++;
                 }
-                replicationErrorQueue.put(peer, peerQueue);
-                // Print the list of statuses that failed to replicate
-                for (Status s : peerQueue) {
-                    System.err.println("Replication error queue for " + peer + ": " + s.getUsername().toString());
+            } else {
+                Status removed = statusService.replicateDelete(op.getTombstone());
+                if (removed != null) {
+                    ws.broadcastDelete(removed);
+                    applied++;
                 }
             }
         }
+        log.debug("Applied {} of {} changes from peer", applied, ops.size());
+        return ResponseEntity.ok().build();
     }
 
-    private void sendDeleteToPeers(Long id) {
-        Status status = statusService.get(id);
-        for (String peer : statusProperties.getPeers()) {
-            try {
-                if (peer.contains(currentPort))
-                    continue;
-                System.out.println("Replicating DELETE to " + peer);
-                new RestTemplate().delete(peer + "/status/replicate/" + id);
-            } catch (Exception e) {
-                System.err.println("Failed to replicate DELETE to " + peer + ": " + e.getMessage());
-                // Store the status in the error queue for later retry if it doesn't exist
-                // already
-                replicationErrorQueue.putIfAbsent(peer, new java.util.ArrayList<>());
-                List<Status> peerQueue = replicationErrorQueue.get(peer);
-                if (!peerQueue.contains(status)) {
-                    peerQueue.add(status);
-                }
-                replicationErrorQueue.put(peer, peerQueue);
-                // Print the list of statuses that failed to replicate
-                System.err.println(
-                        "Replication error queue for " + peer + ": " + replicationErrorQueue.get(peer).toString());
+    // The sync endpoints take the id of the requesting node; in ownership mode they only cover what it keeps
+    @GetMapping("/changes")
+    public StatusChanges changes(@RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "1000") int limit, @RequestParam(required = false) String node) {
+        return statusService.changesSince(since, limit, ownershipDirectory.filterFor(node));
+    }
+
+    @GetMapping("/digest")
+    public StatusDigest digest(@RequestParam(required = false) Long root,
+            @RequestParam(required = false) String node) {
+        StatusDigest digest = statusService.digest(ownershipDirectory.filterFor(node));
+        if (root != null && root == digest.getRoot()) {
+            digest.setBuckets(null);
+        }
+        return digest;
+    }
+
+    @PostMapping("/digest/buckets")
+    public StatusChanges digestBuckets(@RequestBody int[] buckets, @RequestParam(required = false) String node) {
+        return statusService.bucketContents(buckets, ownershipDirectory.filterFor(node));
+    }
+
+    @PostMapping("/presence")
+    public ResponseEntity<Void> presence(@RequestBody List<PresenceEvent> events) {
+        presenceDirectory.apply(events);
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/interest")
+    public ResponseEntity<Void> interest(@RequestBody SubscriptionInterest interest) {
+        ownershipDirectory.apply(interest);
+        return ResponseEntity.ok().build();
+    }
+
+    // The hash ring as this node sees it; with username, also the nodes that keep it
+    @GetMapping("/ownership")
+    public OwnershipDirectory.Stats ownership(@RequestParam(required = false) String username) {
+        return ownershipDirectory.stats(username);
+    }
+
+    @GetMapping("/replication")
+    public List<ReplicationDispatcher.PeerStats> replicationStats() {
+        return replicationDispatcher.stats();
+    }
+
+    @GetMapping("/rate-limits")
+    public RateLimitInterceptor.Stats rateLimitStats() {
+        return rateLimitInterceptor.stats();
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(Long after, Integer limit, WebRequest request,
+            MediaType contentType, boolean ndjson) {
+        String etag = "\"" + statusService.storeVersion() + "\"";
+        // Also sets the ETag header of the response
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(contentType);
+        Iterable<Status> statuses;
+        if (limit != null) {
+            int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+            List<Status> page = statusService.page(after != null ? after : Long.MIN_VALUE, pageSize);
+            if (page.size() == pageSize) {
+                String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("after", page.get(page.size() - 1).getId())
+                        .replaceQueryParam("limit", pageSize)
+                        .build().toUriString();
+                response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
             }
+            statuses = page;
+        } else {
+            statuses = statusService.getStore().values();
         }
+        return response.body(out -> write(statuses, out, ndjson));
     }
 
-    @PostConstruct
-    public void syncFromPeers() {
-        for (String peer : statusProperties.getPeers()) {
-            try {
-                if (peer.contains(currentPort)) {
-                    continue;
+    private void write(Iterable<Status> statuses, OutputStream out, boolean ndjson) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (ndjson) {
+                generator.setRootValueSeparator(null);
+                for (Status status : statuses) {
+                    generator.writeObject(status);
+                    generator.writeRaw('\n');
                 }
-
-                Status[] statuses = new RestTemplate()
-                        .getForObject(peer + "/status/all", Status[].class);
-                if (statuses != null) {
-                    for (Status s : statuses) {
-                        statusService.replicate(s);
-                    }
-                    break;
+            } else {
+                generator.writeStartArray();
+                for (Status status : statuses) {
+                    generator.writeObject(status);
                 }
-            } catch (Exception ignored) {
+                generator.writeEndArray();
             }
         }
     }
 
-    @PostConstruct
-    public void init() {
-        System.out.println("[INIT] Replication refresher scheduled");
+    private void replicateToPeers(Status status) {
+        replicationDispatcher.replicate(status);
     }
 
-    @Scheduled(fixedRate = 30000) // 30 seconds
-    public void CheckForReplicationErrors() {
-        replicationErrorQueue.forEach((peer, statuses) -> {
-            boolean success = true;
-            for (Status status : statuses) {
-                try {
-                    new RestTemplate().postForObject(peer + "/status/replicate", status, Void.class);
-                    System.out.println("[RETRY] Successfully replicated to " + peer + ": " + status.getUsername());
-                    // Clear the queue after successful replication
-                } catch (Exception e) {
-                    System.err.println("[RETRY FAILED] Could not replicate to " + peer + ": " + e.getMessage());
-                    success = false;
-                }
-            }
-            if (success) {
-                replicationErrorQueue.remove(peer);
-            }
-        });
+    private void sendDeleteToPeers(Tombstone tombstone, String username) {
+        replicationDispatcher.replicateDelete(tombstone, username);
     }
 }
@@ -0,0 +1,55 @@
+package project.status_service;
+
+/**
+ * Hash summary of a node's store, as returned by {@code GET /status/digest}. Each bucket is the XOR of the
+ * content hashes of the statuses whose id falls into it; the root is the XOR of all buckets. Buckets are
+ * omitted when the caller's root already matches.
+ */
+public class StatusDigest {
+    private long epoch;
+    // Change sequence of the sending node when the digest was taken
+    private long seq;
+    private long root;
+    private long[] buckets;
+
+    public StatusDigest() {}
+
+    public StatusDigest(long epoch, long seq, long root, long[] buckets) {
+        this.epoch = epoch;
+        this.seq = seq;
+        this.root = root;
+        this.buckets = buckets;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public long getRoot() {
+        return root;
+    }
+
+    public void setRoot(long root) {
+        this.root = root;
+    }
+
+    public long[] getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(long[] buckets) {
+        this.buckets = buckets;
+    }
+}
@@ -0,0 +1,50 @@
+package project.status_service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Destinations of a status. Every change is published to {@code /topic/status} (or {@code /topic/status-delete})
+ * and, when the status has a group, also to {@code /topic/status/{group}} ({@code /topic/status-delete/{group}}),
+ * so a team dashboard only subscribes to the statuses of its own group.
+ */
+final class StatusGroups {
+
+    static final String STATUS_TOPIC = "/topic/status";
+    static final String DELETE_TOPIC = "/topic/status-delete";
+    // Not a valid group name, so it cannot clash with one
+    static final String ALL_GROUPS = "*";
+
+    // Groups become part of a destination, so only simple names are allowed
+    private static final Pattern VALID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private StatusGroups() {
+    }
+
+    static boolean isValid(String group) {
+        return group == null || VALID.matcher(group).matches();
+    }
+
+    static String statusTopic(String group) {
+        return STATUS_TOPIC + "/" + group;
+    }
+
+    static String deleteTopic(String group) {
+        return DELETE_TOPIC + "/" + group;
+    }
+
+    /**
+     * @return {@link #ALL_GROUPS} for the topics of every status, the group of a group topic, or null for a
+     * destination that is not a status topic
+     */
+    static String groupOf(String destination) {
+        if (destination == null) {
+            return null;
+        }
+        if (destination.equals(STATUS_TOPIC) || destination.equals(DELETE_TOPIC)) {
+            return ALL_GROUPS;
+        }
+        String prefix = destination.startsWith(STATUS_TOPIC + "/") ? STATUS_TOPIC + "/"
+                : destination.startsWith(DELETE_TOPIC + "/") ? DELETE_TOPIC + "/" : null;
+        return prefix != null ? destination.substring(prefix.length()) : null;
+    }
+}
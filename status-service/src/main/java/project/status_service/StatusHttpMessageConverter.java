@@ -0,0 +1,80 @@
+package project.status_service;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Reads and writes a {@link Status} or a batch of {@link ReplicationOp}s as {@value StatusCodec#MEDIA_TYPE}. It is
+ * registered after the JSON converter, so it is only chosen when a request or {@code Accept} header names it.
+ */
+public class StatusHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(StatusCodec.MEDIA_TYPE);
+
+    public StatusHttpMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Status.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType) {
+        return (isStatus(type) || isBatch(type)) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType) {
+        return (type != null ? isStatus(type) || isBatch(type) : supports(clazz)) && canWrite(mediaType);
+    }
+
+    @Override
+    public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage)
+            throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(inputMessage.getBody().readAllBytes());
+        try {
+            return isBatch(type) ? StatusCodec.readBatch(in) : StatusCodec.read(in);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new HttpMessageNotReadableException("Truncated " + StatusCodec.MEDIA_TYPE + " body", e,
+                    inputMessage);
+        }
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object body, @Nullable Type type, HttpOutputMessage outputMessage)
+            throws IOException {
+        byte[] bytes = body instanceof Status status ? StatusCodec.encode(status)
+                : StatusCodec.encodeBatch((List<ReplicationOp>) body);
+        outputMessage.getHeaders().setContentLength(bytes.length);
+        outputMessage.getBody().write(bytes);
+    }
+
+    private static boolean isStatus(Type type) {
+        return type == Status.class;
+    }
+
+    private static boolean isBatch(Type type) {
+        ResolvableType resolved = ResolvableType.forType(type);
+        return List.class.isAssignableFrom(resolved.toClass())
+                && resolved.getGeneric(0).toClass() == ReplicationOp.class;
+    }
+}
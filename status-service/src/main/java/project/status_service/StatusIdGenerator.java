@@ -0,0 +1,17 @@
+package project.status_service;
+
+/**
+ * Allocates ids for newly created statuses. Implementations must be thread-safe
+ * and must never hand out the same id twice within the cluster.
+ */
+public interface StatusIdGenerator {
+
+    long nextId();
+
+    /**
+     * Called with every id this node restores from its journal or receives from a peer, so that ids it issued
+     * before a restart are not issued again.
+     */
+    default void observe(long id) {
+    }
+}
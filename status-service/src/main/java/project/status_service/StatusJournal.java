@@ -0,0 +1,351 @@
+package project.status_service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Optional persistence of the status store ({@code status.persistence.enabled}).
+ * <p>
+ * Every upsert and delete is appended to a write-ahead log segment ({@code wal-N.log}). Appends go to an
+ * in-memory buffer that is written out once per second, and with {@code status.persistence.fsync} also forced
+ * to disk. Every {@code snapshot-interval} the log is rotated and the whole store, including the tombstones kept for
+ * anti-entropy, is written to {@code snapshot-N.bin}, after which older segments and snapshots are deleted. The
+ * tombstones keep a stale upsert from a peer from bringing a deleted status back after a restart. On startup the
+ * newest snapshot and the segments from N on are read through memory mappings and replayed, so a node can serve
+ * its last state without any peer.
+ * <p>
+ * Both files hold length-prefixed records: {@code int length | byte type | body}, with the body being a status
+ * encoded by {@link StatusCodec} for upserts or {@code varlong id | varlong version | varint origin} for deletes.
+ * A snapshot holds the upserts of all live statuses followed by the deletes of all tombstones.
+ */
+@Component
+public class StatusJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusJournal.class);
+
+    private static final byte UPSERT = 0;
+    private static final byte DELETE = 1;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final StatusProperties.Persistence config;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+    private final StatusCodec.Writer writer = new StatusCodec.Writer(256);
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+
+    private Collection<Status> liveView;
+    private Collection<Tombstone> tombstoneView;
+    private FileChannel wal;
+    private long segment;
+    private volatile boolean dirty;
+    private volatile boolean changed;
+    private volatile long lastSnapshotAt = System.currentTimeMillis();
+
+    public StatusJournal(StatusProperties statusProperties) {
+        this.config = statusProperties.getPersistence();
+        this.enabled = config.isEnabled();
+        this.directory = Path.of(config.getDirectory());
+    }
+
+    /**
+     * Replays the newest snapshot and all later log segments, then starts a new segment for appends.
+     *
+     * @param liveView the store's values, written out by each snapshot
+     * @param tombstoneView the store's tombstones, written out by each snapshot after the values
+     */
+    public void open(Collection<Status> liveView, Collection<Tombstone> tombstoneView, Consumer<Status> restore,
+            Consumer<Tombstone> restoreDelete) {
+        if (!enabled) {
+            return;
+        }
+        this.liveView = liveView;
+        this.tombstoneView = tombstoneView;
+        try {
+            Files.createDirectories(directory);
+            long start = System.currentTimeMillis();
+            List<Path> snapshots = list("snapshot-");
+            long from = 0;
+            int records = 0;
+            if (!snapshots.isEmpty()) {
+                Path snapshot = snapshots.get(snapshots.size() - 1);
+                from = segmentOf(snapshot);
+                records += replay(snapshot, restore, restoreDelete);
+            }
+            for (Path log : list("wal-")) {
+                if (segmentOf(log) >= from) {
+                    records += replay(log, restore, restoreDelete);
+                    segment = Math.max(segment, segmentOf(log));
+                }
+            }
+            segment = Math.max(segment, from) + 1;
+            wal = openSegment(segment);
+            log.info("Recovered {} records in {} ms from {}", records, System.currentTimeMillis() - start, directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not recover status journal from " + directory, e);
+        }
+    }
+
+    public void upsert(Status status) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            writer.reset();
+            StatusCodec.write(status, writer);
+            append(UPSERT);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void delete(Tombstone tombstone) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            writer.reset();
+            writeTombstone(tombstone, writer);
+            append(DELETE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        if (dirty) {
+            lock.lock();
+            try {
+                dirty = false;
+                drain();
+                if (config.isFsync()) {
+                    wal.force(false);
+                }
+            } catch (IOException e) {
+                log.error("Journal flush failed: {}", e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (changed && System.currentTimeMillis() - lastSnapshotAt >= config.getSnapshotInterval().toMillis()
+                && snapshotting.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("status-snapshot").start(() -> {
+                try {
+                    snapshot();
+                } finally {
+                    snapshotting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Rotates the log, writes the store and its tombstones to {@code snapshot-N.bin} with N the new segment, and
+     * deletes everything older. Changes made while the snapshot is written land in segment N and are replayed on
+     * top of it.
+     */
+    public void snapshot() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long snapshotSegment;
+        lock.lock();
+        try {
+            drain();
+            wal.force(false);
+            wal.close();
+            snapshotSegment = ++segment;
+            wal = openSegment(snapshotSegment);
+            changed = false;
+        } catch (IOException e) {
+            log.error("Could not rotate journal: {}", e.getMessage());
+            return;
+        } finally {
+            lock.unlock();
+        }
+        lastSnapshotAt = start;
+
+        Path target = directory.resolve(name("snapshot-", snapshotSegment, ".bin"));
+        Path tmp = directory.resolve(target.getFileName() + ".tmp");
+        int count = 0;
+        int deletes = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer chunk = ByteBuffer.allocate(1 << 20);
+            StatusCodec.Writer record = new StatusCodec.Writer(256);
+            for (Status status : liveView) {
+                record.reset();
+                StatusCodec.write(status, record);
+                if (chunk.remaining() < record.size() + 5) {
+                    writeFully(out, chunk);
+                }
+                chunk.putInt(record.size() + 1).put(UPSERT).put(record.array(), 0, record.size());
+                count++;
+            }
+            for (Tombstone tombstone : tombstoneView) {
+                record.reset();
+                writeTombstone(tombstone, record);
+                if (chunk.remaining() < record.size() + 5) {
+                    writeFully(out, chunk);
+                }
+                chunk.putInt(record.size() + 1).put(DELETE).put(record.array(), 0, record.size());
+                deletes++;
+            }
+            writeFully(out, chunk);
+            out.force(true);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            for (Path old : list("snapshot-")) {
+                if (segmentOf(old) < snapshotSegment) {
+                    Files.deleteIfExists(old);
+                }
+            }
+            for (Path old : list("wal-")) {
+                if (segmentOf(old) < snapshotSegment) {
+                    Files.deleteIfExists(old);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Snapshot failed: {}", e.getMessage());
+            return;
+        }
+        log.info("Snapshot of {} statuses and {} tombstones written in {} ms", count, deletes,
+                System.currentTimeMillis() - start);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!enabled || wal == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            drain();
+            wal.force(true);
+            wal.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Copies the record in writer into the buffer, preceded by its length and type
+    private void append(byte type) {
+        int length = writer.size() + 1;
+        try {
+            if (buffer.remaining() < length + 4) {
+                drain();
+            }
+            if (buffer.remaining() < length + 4) {
+                ByteBuffer large = ByteBuffer.allocate(length + 4);
+                large.putInt(length).put(type).put(writer.array(), 0, writer.size());
+                writeFully(wal, large);
+            } else {
+                buffer.putInt(length).put(type).put(writer.array(), 0, writer.size());
+            }
+            dirty = true;
+            changed = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to status journal", e);
+        }
+    }
+
+    private void drain() throws IOException {
+        writeFully(wal, buffer);
+    }
+
+    private int replay(Path file, Consumer<Status> restore, Consumer<Tombstone> restoreDelete) throws IOException {
+        int records = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (in.remaining() >= 4) {
+                int length = in.getInt();
+                if (length <= 0 || length > in.remaining()) {
+                    log.warn("Ignoring truncated tail of {}", file.getFileName());
+                    break;
+                }
+                ByteBuffer record = in.slice(in.position(), length);
+                in.position(in.position() + length);
+                if (record.get() == UPSERT) {
+                    restore.accept(StatusCodec.read(record));
+                } else {
+                    restoreDelete.accept(readTombstone(record));
+                }
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private static void writeTombstone(Tombstone tombstone, StatusCodec.Writer out) {
+        out.writeVarLong(tombstone.getId());
+        out.writeVarLong(tombstone.getVersion());
+        out.writeVarLong(tombstone.getOrigin());
+    }
+
+    // The deletion time is not journaled, the tombstone's TTL starts over on recovery
+    private static Tombstone readTombstone(ByteBuffer record) {
+        long id = StatusCodec.readVarLong(record);
+        long version = record.hasRemaining() ? StatusCodec.readVarLong(record) : 0;
+        int origin = record.hasRemaining() ? (int) StatusCodec.readVarLong(record) : 0;
+        return new Tombstone(id, LocalDateTime.now(), version, origin);
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(directory.resolve(name("wal-", number, ".log")), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> list(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(prefix))
+                    .filter(f -> !f.getFileName().toString().endsWith(".tmp"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static String name(String prefix, long number, String suffix) {
+        return String.format("%s%016d%s", prefix, number, suffix);
+    }
+
+    private static long segmentOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        data.flip();
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+        data.clear();
+    }
+}
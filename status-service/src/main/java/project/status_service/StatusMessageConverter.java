@@ -0,0 +1,44 @@
+package project.status_service;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * STOMP counterpart of {@link StatusHttpMessageConverter}: converts a {@link Status} to and from the
+ * {@link StatusCodec} encoding. Only applies to messages with that content type, so JSON stays the default; see
+ * {@link SubscriptionFilters} for how a subscription asks for it. The content type is
+ * {@code application/octet-stream;format=x-status} rather than {@value StatusCodec#MEDIA_TYPE}, because STOMP
+ * frames of any other type go out as WebSocket text messages, which cannot carry arbitrary bytes.
+ */
+public final class StatusMessageConverter extends AbstractMessageConverter {
+
+    public static final MimeType MIME_TYPE = new MimeType("application", "octet-stream",
+            Map.of("format", "x-status"));
+
+    public StatusMessageConverter() {
+        super(MIME_TYPE);
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Status.class == clazz;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, @Nullable Object conversionHint) {
+        return message.getPayload() instanceof byte[] bytes ? StatusCodec.read(ByteBuffer.wrap(bytes)) : null;
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, @Nullable MessageHeaders headers,
+            @Nullable Object conversionHint) {
+        return StatusCodec.encode((Status) payload);
+    }
+}
@@ -0,0 +1,22 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters shared by several components. Every component registers its own meters once, when it is created, and
+ * keeps them in fields, so recording on a hot path never looks a meter up or allocates tags.
+ */
+final class StatusMetrics {
+
+    private StatusMetrics() {
+    }
+
+    // One timer per periodic or deadline-driven cleanup, told apart by the task tag
+    static Timer cleanupTimer(MeterRegistry meterRegistry, String task) {
+        return Timer.builder("status.cleanup.duration")
+                .description("Time spent removing expired state")
+                .tag("task", task)
+                .register(meterRegistry);
+    }
+}
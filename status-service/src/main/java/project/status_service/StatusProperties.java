@@ -2,13 +2,28 @@ package project.status_service;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
 import java.util.List;
 
 @Configuration
 @ConfigurationProperties(prefix = "status")
 public class StatusProperties {
-    private List<String> peers;
+    private List<String> peers = List.of();
+    private int nodeId = 1;
+    private final Http http = new Http();
+    private final Replication replication = new Replication();
+    private final Outbox outbox = new Outbox();
+    private final Persistence persistence = new Persistence();
+    private final Sync sync = new Sync();
+    private final Websocket websocket = new Websocket();
+    private final Presence presence = new Presence();
+    private final Inactivity inactivity = new Inactivity();
+    private final Channels channels = new Channels();
+    private final RateLimit rateLimit = new RateLimit();
+    private final Discovery discovery = new Discovery();
+    private final Ownership ownership = new Ownership();
 
     public List<String> getPeers() {
         return peers;
@@ -17,4 +32,505 @@ public class StatusProperties {
     public void setPeers(List<String> peers) {
         this.peers = peers;
     }
-}
\ No newline at end of file
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Http getHttp() {
+        return http;
+    }
+
+    public Replication getReplication() {
+        return replication;
+    }
+
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    public Persistence getPersistence() {
+        return persistence;
+    }
+
+    public Sync getSync() {
+        return sync;
+    }
+
+    public Websocket getWebsocket() {
+        return websocket;
+    }
+
+    public Presence getPresence() {
+        return presence;
+    }
+
+    public Inactivity getInactivity() {
+        return inactivity;
+    }
+
+    public Channels getChannels() {
+        return channels;
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public Discovery getDiscovery() {
+        return discovery;
+    }
+
+    public Ownership getOwnership() {
+        return ownership;
+    }
+
+    public static class Discovery {
+        private Duration refreshInterval = Duration.ofSeconds(10);
+        // Defaults to spring.application.name
+        private String serviceId;
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+
+        public String getServiceId() {
+            return serviceId;
+        }
+
+        public void setServiceId(String serviceId) {
+            this.serviceId = serviceId;
+        }
+    }
+
+    public static class Ownership {
+        // Off: every change goes to every peer
+        private boolean enabled = false;
+        // Nodes that keep each username, the owner included
+        private int replicationFactor = 2;
+        // Points per node on the hash ring; more points spread usernames more evenly
+        private int virtualNodes = 128;
+        // How often each node re-sends the topics its clients subscribe to
+        private Duration interestRefreshInterval = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getReplicationFactor() {
+            return replicationFactor;
+        }
+
+        public void setReplicationFactor(int replicationFactor) {
+            this.replicationFactor = replicationFactor;
+        }
+
+        public int getVirtualNodes() {
+            return virtualNodes;
+        }
+
+        public void setVirtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+        }
+
+        public Duration getInterestRefreshInterval() {
+            return interestRefreshInterval;
+        }
+
+        public void setInterestRefreshInterval(Duration interestRefreshInterval) {
+            this.interestRefreshInterval = interestRefreshInterval;
+        }
+    }
+
+    public static class Http {
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration readTimeout = Duration.ofSeconds(5);
+        private int maxConnectionsPerPeer = 8;
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public int getMaxConnectionsPerPeer() {
+            return maxConnectionsPerPeer;
+        }
+
+        public void setMaxConnectionsPerPeer(int maxConnectionsPerPeer) {
+            this.maxConnectionsPerPeer = maxConnectionsPerPeer;
+        }
+    }
+
+    public static class Replication {
+        private int batchSize = 256;
+        private Duration batchWindow = Duration.ofMillis(20);
+        private Duration retryBackoff = Duration.ofSeconds(1);
+        private Duration maxRetryBackoff = Duration.ofSeconds(30);
+        private boolean binary = true;
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getBatchWindow() {
+            return batchWindow;
+        }
+
+        public void setBatchWindow(Duration batchWindow) {
+            this.batchWindow = batchWindow;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+
+        public Duration getMaxRetryBackoff() {
+            return maxRetryBackoff;
+        }
+
+        public void setMaxRetryBackoff(Duration maxRetryBackoff) {
+            this.maxRetryBackoff = maxRetryBackoff;
+        }
+
+        public boolean isBinary() {
+            return binary;
+        }
+
+        public void setBinary(boolean binary) {
+            this.binary = binary;
+        }
+    }
+
+    public static class Outbox {
+        private String directory = "data/outbox";
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public static class Persistence {
+        private boolean enabled = false;
+        private String directory = "data/store";
+        private Duration snapshotInterval = Duration.ofMinutes(5);
+        private boolean fsync = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public Duration getSnapshotInterval() {
+            return snapshotInterval;
+        }
+
+        public void setSnapshotInterval(Duration snapshotInterval) {
+            this.snapshotInterval = snapshotInterval;
+        }
+
+        public boolean isFsync() {
+            return fsync;
+        }
+
+        public void setFsync(boolean fsync) {
+            this.fsync = fsync;
+        }
+    }
+
+    public static class Sync {
+        private Duration interval = Duration.ofSeconds(30);
+        private int pageSize = 1000;
+        private Duration tombstoneTtl = Duration.ofHours(1);
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        public Duration getTombstoneTtl() {
+            return tombstoneTtl;
+        }
+
+        public void setTombstoneTtl(Duration tombstoneTtl) {
+            this.tombstoneTtl = tombstoneTtl;
+        }
+    }
+
+    public static class Websocket {
+        // Statuses per message of the initial snapshot sent to a client
+        private int snapshotChunkSize = 1000;
+        // Keep only the newest pending update per status for clients that cannot keep up
+        private boolean conflate = true;
+        private Duration sendTimeLimit = Duration.ofSeconds(10);
+        private DataSize sendBufferSizeLimit = DataSize.ofKilobytes(512);
+
+        public int getSnapshotChunkSize() {
+            return snapshotChunkSize;
+        }
+
+        public void setSnapshotChunkSize(int snapshotChunkSize) {
+            this.snapshotChunkSize = snapshotChunkSize;
+        }
+
+        public boolean isConflate() {
+            return conflate;
+        }
+
+        public void setConflate(boolean conflate) {
+            this.conflate = conflate;
+        }
+
+        public Duration getSendTimeLimit() {
+            return sendTimeLimit;
+        }
+
+        public void setSendTimeLimit(Duration sendTimeLimit) {
+            this.sendTimeLimit = sendTimeLimit;
+        }
+
+        public DataSize getSendBufferSizeLimit() {
+            return sendBufferSizeLimit;
+        }
+
+        public void setSendBufferSizeLimit(DataSize sendBufferSizeLimit) {
+            this.sendBufferSizeLimit = sendBufferSizeLimit;
+        }
+    }
+
+    public static class Presence {
+        private Duration refreshInterval = Duration.ofSeconds(10);
+        private Duration lease = Duration.ofSeconds(30);
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+
+        public Duration getLease() {
+            return lease;
+        }
+
+        public void setLease(Duration lease) {
+            this.lease = lease;
+        }
+    }
+
+    public static class Inactivity {
+        // Idle time after which a user's status is changed to "Inactive"
+        private Duration inactiveAfter = Duration.ofMinutes(2);
+        // Idle time after which a user's status is removed
+        private Duration removeAfter = Duration.ofMinutes(5);
+
+        public Duration getInactiveAfter() {
+            return inactiveAfter;
+        }
+
+        public void setInactiveAfter(Duration inactiveAfter) {
+            this.inactiveAfter = inactiveAfter;
+        }
+
+        public Duration getRemoveAfter() {
+            return removeAfter;
+        }
+
+        public void setRemoveAfter(Duration removeAfter) {
+            this.removeAfter = removeAfter;
+        }
+    }
+
+    // Executors of the STOMP message channels, see ChannelExecutors
+    public static class Channels {
+        private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+        private final ChannelExecutor inbound = new ChannelExecutor(CORES * 2, CORES * 4, 1000);
+        private final ChannelExecutor outbound = new ChannelExecutor(CORES * 2, CORES * 4, 10000);
+        // By default the broker channel delivers on the sending thread
+        private final ChannelExecutor broker = new ChannelExecutor(0, 0, 0);
+
+        public ChannelExecutor getInbound() {
+            return inbound;
+        }
+
+        public ChannelExecutor getOutbound() {
+            return outbound;
+        }
+
+        public ChannelExecutor getBroker() {
+            return broker;
+        }
+    }
+
+    public static class ChannelExecutor {
+        private int corePoolSize;
+        // 0 runs the channel's handlers on the sending thread
+        private int maxPoolSize;
+        private int queueCapacity;
+        private Duration keepAlive = Duration.ofSeconds(60);
+        // What happens to a message when the queue and the pool are full
+        private RejectionPolicy rejectionPolicy = RejectionPolicy.CALLER_RUNS;
+        // One virtual thread per message, at most max-pool-size at once; senders wait for a free slot
+        private boolean virtualThreads;
+
+        public ChannelExecutor() {}
+
+        public ChannelExecutor(int corePoolSize, int maxPoolSize, int queueCapacity) {
+            this.corePoolSize = corePoolSize;
+            this.maxPoolSize = maxPoolSize;
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getCorePoolSize() {
+            return corePoolSize;
+        }
+
+        public void setCorePoolSize(int corePoolSize) {
+            this.corePoolSize = corePoolSize;
+        }
+
+        public int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        public void setMaxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Duration getKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+
+        public RejectionPolicy getRejectionPolicy() {
+            return rejectionPolicy;
+        }
+
+        public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+            this.rejectionPolicy = rejectionPolicy;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        public enum RejectionPolicy {
+            ABORT, CALLER_RUNS, DISCARD, DISCARD_OLDEST
+        }
+    }
+
+    // Token buckets for /app/status, one per session and one per username
+    public static class RateLimit {
+        private boolean enabled = true;
+        // Sustained messages per second
+        private double rate = 10;
+        // Messages accepted at once after a quiet period
+        private int burst = 20;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package project.status_service;
 public class StatusRequest {
     private String username;
     private String statusText;
+    private String group;
 
     public StatusRequest() {}
 
@@ -11,6 +12,11 @@ public class StatusRequest {
         this.statusText = statusText;
     }
 
+    public StatusRequest(String username, String statusText, String group) {
+        this(username, statusText);
+        this.group = group;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -26,4 +32,12 @@ public class StatusRequest {
     public void setStatusText(String statusText) {
         this.statusText = statusText;
     }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
 }
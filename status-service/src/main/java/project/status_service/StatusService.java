@@ -1,69 +1,373 @@
 package project.status_service;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 @Service
 public class StatusService {
 
-    private final Map<Long, Status> store = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Status> store = new ConcurrentHashMap<>();
 
-    public Status saveOrUpdate(StatusRequest req) {
-        for (Map.Entry<Long, Status> entry : store.entrySet()) {
-            if (entry.getValue().getUsername().equalsIgnoreCase(req.getUsername())) {
-                Long id = entry.getKey();
-                Status updated = new Status(id, req.getUsername(), req.getStatusText(), LocalDateTime.now());
-                store.put(id, updated);
-                return updated;
-            }
-        }
+    // Secondary index: the same entries ordered by id, for paging; changed inside the entry's lock in store
+    private final ConcurrentSkipListMap<Long, Status> byId = new ConcurrentSkipListMap<>();
 
-        Long id = (long) Math.abs(new Random().nextInt() % 10000);
-        Status status = new Status(id, req.getUsername(), req.getStatusText(), LocalDateTime.now());
-        store.put(id, status);
-        return status;
+    // Secondary index: normalized (lower-case) username -> status id
+    private final ConcurrentHashMap<String, Long> usernameIndex = new ConcurrentHashMap<>();
+
+    private final StatusChangeLog changeLog = new StatusChangeLog();
+
+    private final StatusIdGenerator idGenerator;
+    private final StatusJournal journal;
+    private final HybridClock clock;
+
+    // Registered once, so recording on the write path only adds to the timer
+    private final Timer saveTimer;
+    private final Timer updateTimer;
+    private final Timer deleteTimer;
+    private final Timer replicateTimer;
+    private final Timer replicateDeleteTimer;
+    private final Timer pruneTimer;
+
+    public StatusService(StatusIdGenerator idGenerator, StatusJournal journal, HybridClock clock,
+            MeterRegistry meterRegistry) {
+        this.idGenerator = idGenerator;
+        this.journal = journal;
+        this.clock = clock;
+        Gauge.builder("status.store.size", store, Map::size)
+                .description("Statuses in the store")
+                .register(meterRegistry);
+        Gauge.builder("status.store.tombstones", changeLog, log -> log.tombstones().size())
+                .description("Deletes kept for anti-entropy")
+                .register(meterRegistry);
+        this.saveTimer = operationTimer(meterRegistry, "save");
+        this.updateTimer = operationTimer(meterRegistry, "update");
+        this.deleteTimer = operationTimer(meterRegistry, "delete");
+        this.replicateTimer = operationTimer(meterRegistry, "replicate");
+        this.replicateDeleteTimer = operationTimer(meterRegistry, "replicate-delete");
+        this.pruneTimer = StatusMetrics.cleanupTimer(meterRegistry, "tombstones");
+    }
+
+    @PostConstruct
+    public void recover() {
+        journal.open(store.values(), changeLog.tombstones().values(), this::restore, this::restoreDelete);
     }
 
+    public Status saveOrUpdate(StatusRequest req) {
+        long start = System.nanoTime();
+        Status[] result = new Status[2];
+        // compute() locks the username's bin, so two concurrent requests for the
+        // same user always resolve to the same id instead of creating two entries
+        usernameIndex.compute(indexKey(req.getUsername()), (key, existingId) -> {
+            Long id = existingId != null ? existingId : idGenerator.nextId();
+            Status status = stamp(id, req);
+            result[0] = status;
+            result[1] = write(status);
+            return id;
+        });
+        unindexIfRenamed(result[1], result[0]);
+        saveTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result[0];
+    }
+
+    /**
+     * Replaces the status with the id. Like {@link #saveOrUpdate}, the write runs inside {@code compute} on the
+     * username's index entry, so the id cannot take over a username that another status holds.
+     *
+     * @return the new status, or null if the username belongs to a status with another id
+     */
     public Status update(Long id, StatusRequest req) {
-        Status status = new Status(id, req.getUsername(), req.getStatusText(), LocalDateTime.now());
-        store.put(id, status);
-        return status;
+        long start = System.nanoTime();
+        Status[] result = new Status[2];
+        usernameIndex.compute(indexKey(req.getUsername()), (key, existingId) -> {
+            if (existingId != null && !existingId.equals(id)) {
+                return existingId;
+            }
+            result[0] = stamp(id, req);
+            result[1] = write(result[0]);
+            return id;
+        });
+        if (result[0] != null) {
+            unindexIfRenamed(result[1], result[0]);
+        }
+        updateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result[0];
     }
 
-    public void delete(Long id) {
-        store.remove(id);
+    // Returns the tombstone to replicate; it is kept also when this node did not have the id
+    public Tombstone delete(Long id) {
+        long start = System.nanoTime();
+        Tombstone tombstone = new Tombstone(id, LocalDateTime.now(), clock.now(), clock.node());
+        erase(tombstone, false);
+        deleteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return tombstone;
     }
 
     public Status get(Long id) {
         return store.get(id);
     }
 
-    public void replicate(Status status) {
-        store.put(status.getId(), status);
+    /**
+     * Applies a status received from a peer, by replication or anti-entropy sync, if its version is newer than
+     * both the local entry and a tombstone for the id. Duplicates and stale deliveries are rejected after a
+     * single lock-free read, without locking the entry or journaling anything.
+     *
+     * @return whether the store changed
+     */
+    public boolean replicate(Status status) {
+        long start = System.nanoTime();
+        try {
+            return apply(status);
+        } finally {
+            replicateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Applies a delete received from a peer unless the local entry or tombstone has a newer version. The tombstone
+     * is kept also when the id is not in the store, so an upsert older than the delete that arrives after it, by
+     * replication or anti-entropy, cannot bring the status back.
+     *
+     * @return the removed status, or null if there was none to remove
+     */
+    public Status replicateDelete(Tombstone tombstone) {
+        long start = System.nanoTime();
+        try {
+            idGenerator.observe(tombstone.getId());
+            if (!isNewer(tombstone, store.get(tombstone.getId()))) {
+                return null;
+            }
+            clock.observe(tombstone.getVersion());
+            return erase(tombstone, true);
+        } finally {
+            replicateDeleteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // With a filter, only matching statuses are returned; deletes are always returned
+    public StatusChanges changesSince(long since, int limit, Predicate<Status> filter) {
+        return changeLog.since(since, limit, store::get, filter);
+    }
+
+    // Grows with every change to the store; equal values mean nothing changed in between
+    public long changeSeq() {
+        return changeLog.seq();
+    }
+
+    // Identifies the current state of the store across restarts, for use as an entity tag
+    public String storeVersion() {
+        return Long.toHexString(changeLog.epoch()) + "-" + changeLog.seq();
     }
 
-    public void replicateDelete(Long id) {
-        store.remove(id);
+    public StatusDigest digest() {
+        return changeLog.digest();
+    }
+
+    // Digest over the statuses matching the filter only; scans the store unless the filter is null
+    public StatusDigest digest(Predicate<Status> filter) {
+        if (filter == null) {
+            return changeLog.digest();
+        }
+        return changeLog.digest(store.values().stream().filter(filter)::iterator);
+    }
+
+    // Live entries matching the filter (null for all) and tombstones whose ids fall into the given digest buckets
+    public StatusChanges bucketContents(int[] buckets, Predicate<Status> filter) {
+        BitSet wanted = new BitSet(StatusChangeLog.BUCKETS);
+        for (int bucket : buckets) {
+            wanted.set(bucket);
+        }
+        StatusChanges contents = new StatusChanges();
+        contents.setEpoch(changeLog.epoch());
+        contents.setSeq(changeLog.seq());
+        store.values().stream()
+                .filter(s -> wanted.get(StatusChangeLog.bucketOf(s.getId())))
+                .filter(s -> filter == null || filter.test(s))
+                .forEach(contents.getStatuses()::add);
+        changeLog.tombstones().values().stream()
+                .filter(t -> wanted.get(StatusChangeLog.bucketOf(t.getId())))
+                .forEach(contents.getDeleted()::add);
+        return contents;
+    }
+
+    public void pruneTombstones(LocalDateTime deletedBefore) {
+        long start = System.nanoTime();
+        changeLog.tombstones().values().stream()
+                .filter(t -> t.getDeletedAt().isBefore(deletedBefore))
+                .forEach(t -> store.compute(t.getId(), (id, current) -> {
+                    if (current == null) {
+                        changeLog.prune(t);
+                    }
+                    return current;
+                }));
+        pruneTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
     public List<Status> all() {
         return new ArrayList<>(store.values());
     }
 
+    /**
+     * Returns up to limit statuses with an id greater than after, ordered by id. A page is read from the id index
+     * starting at after, so it costs O(log n + limit) however far into the store it is.
+     */
+    public List<Status> page(long after, int limit) {
+        List<Status> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Status status : byId.tailMap(after, false).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(status);
+        }
+        return page;
+    }
+
     public Map<Long, Status> getStore() {
         return store;
     }
 
     public Status findByUsername(String username) {
-        return store.values().stream()
-                .filter(s -> s.getUsername().equalsIgnoreCase(username))
-                .findFirst()
-                .orElse(null);
+        Long id = usernameIndex.get(indexKey(username));
+        return id != null ? store.get(id) : null;
+    }
+
+    private boolean apply(Status status) {
+        idGenerator.observe(status.getId());
+        if (!isNewer(status, store.get(status.getId()))) {
+            return false;
+        }
+        clock.observe(status.getVersion());
+        boolean[] applied = new boolean[1];
+        Status[] previous = new Status[1];
+        store.compute(status.getId(), (id, current) -> {
+            if (!isNewer(status, current)) {
+                return current;
+            }
+            journal.upsert(status);
+            changeLog.upserted(current, status);
+            byId.put(id, status);
+            applied[0] = true;
+            previous[0] = current;
+            return status;
+        });
+        if (applied[0]) {
+            unindexIfRenamed(previous[0], status);
+            usernameIndex.put(indexKey(status.getUsername()), status.getId());
+        }
+        return applied[0];
+    }
+
+    // Journals inside the entry's lock, so the journal sees changes to one id in the same order as the store
+    private Status write(Status status) {
+        Status[] previous = new Status[1];
+        store.compute(status.getId(), (id, current) -> {
+            journal.upsert(status);
+            changeLog.upserted(current, status);
+            byId.put(id, status);
+            previous[0] = current;
+            return status;
+        });
+        return previous[0];
+    }
+
+    // Removes the id and records the tombstone, if onlyIfNewer unless the entry or tombstone is at least as new
+    private Status erase(Tombstone tombstone, boolean onlyIfNewer) {
+        Status[] removed = new Status[1];
+        store.compute(tombstone.getId(), (id, current) -> {
+            if (onlyIfNewer && !isNewer(tombstone, current)) {
+                return current;
+            }
+            journal.delete(tombstone);
+            changeLog.deleted(current, tombstone);
+            byId.remove(id);
+            removed[0] = current;
+            return null;
+        });
+        if (removed[0] != null) {
+            usernameIndex.remove(indexKey(removed[0].getUsername()), tombstone.getId());
+        }
+        return removed[0];
+    }
+
+    // Applies a recovered entry without journaling it again
+    private void restore(Status status) {
+        idGenerator.observe(status.getId());
+        clock.observe(status.getVersion());
+        Status previous = store.put(status.getId(), status);
+        byId.put(status.getId(), status);
+        changeLog.upserted(previous, status);
+        unindexIfRenamed(previous, status);
+        usernameIndex.put(indexKey(status.getUsername()), status.getId());
+    }
+
+    private void restoreDelete(Tombstone tombstone) {
+        idGenerator.observe(tombstone.getId());
+        clock.observe(tombstone.getVersion());
+        Status removed = store.remove(tombstone.getId());
+        byId.remove(tombstone.getId());
+        changeLog.deleted(removed, tombstone);
+        if (removed != null) {
+            usernameIndex.remove(indexKey(removed.getUsername()), tombstone.getId());
+        }
+    }
+
+    private Status stamp(Long id, StatusRequest req) {
+        Status status = new Status(id, req.getUsername(), req.getStatusText(), LocalDateTime.now(), clock.now(),
+                clock.node());
+        status.setGroup(req.getGroup());
+        return status;
+    }
+
+    // Last writer wins on (version, origin); an equal version is a duplicate and not newer
+    private boolean isNewer(Status candidate, Status current) {
+        if (current == null) {
+            Tombstone tombstone = changeLog.tombstone(candidate.getId());
+            return tombstone == null || HybridClock.isAfter(candidate.getVersion(), candidate.getOrigin(),
+                    tombstone.getVersion(), tombstone.getOrigin());
+        }
+        return HybridClock.isAfter(candidate.getVersion(), candidate.getOrigin(),
+                current.getVersion(), current.getOrigin());
+    }
+
+    // A delete is compared with the entry, or with the tombstone already kept for an id that is not in the store
+    private boolean isNewer(Tombstone tombstone, Status current) {
+        if (current == null) {
+            Tombstone kept = changeLog.tombstone(tombstone.getId());
+            return kept == null || HybridClock.isAfter(tombstone.getVersion(), tombstone.getOrigin(),
+                    kept.getVersion(), kept.getOrigin());
+        }
+        return HybridClock.isAfter(tombstone.getVersion(), tombstone.getOrigin(),
+                current.getVersion(), current.getOrigin());
+    }
+
+    // Drops the index entry of the previous username when an id changes its owner
+    private void unindexIfRenamed(Status previous, Status current) {
+        if (previous != null && !indexKey(previous.getUsername()).equals(indexKey(current.getUsername()))) {
+            usernameIndex.remove(indexKey(previous.getUsername()), previous.getId());
+        }
+    }
+
+    private static Timer operationTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("status.store.operation")
+                .description("Time to apply a change to the store, including journaling")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    private static String indexKey(String username) {
+        return username.toLowerCase(Locale.ROOT);
     }
-}
\ No newline at end of file
+}
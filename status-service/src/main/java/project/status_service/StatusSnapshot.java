@@ -0,0 +1,66 @@
+package project.status_service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pre-serialized copy of the whole store for clients that connect and ask for the initial state. The store is
+ * serialized once into JSON arrays of at most {@code status.websocket.snapshot-chunk-size} statuses, and the
+ * result is reused until the change sequence of the store moves on. A reconnect storm therefore serializes the
+ * store once, no matter how many clients are asking for it.
+ */
+@Component
+public class StatusSnapshot {
+
+    private final StatusService statusService;
+    private final ObjectMapper objectMapper;
+    private final StatusProperties statusProperties;
+
+    private volatile Chunks current = new Chunks(-1, List.of());
+
+    public StatusSnapshot(StatusService statusService, ObjectMapper objectMapper,
+            StatusProperties statusProperties) {
+        this.statusService = statusService;
+        this.objectMapper = objectMapper;
+        this.statusProperties = statusProperties;
+    }
+
+    // JSON arrays covering every status; a single empty array when the store is empty
+    public List<byte[]> chunks() {
+        Chunks chunks = current;
+        if (chunks.seq() == statusService.changeSeq()) {
+            return chunks.payloads();
+        }
+        synchronized (this) {
+            // The sequence is read before the store, so changes made while serializing trigger another rebuild
+            long seq = statusService.changeSeq();
+            if (current.seq() != seq) {
+                current = new Chunks(seq, serialize());
+            }
+            return current.payloads();
+        }
+    }
+
+    private List<byte[]> serialize() {
+        int chunkSize = Math.max(1, statusProperties.getWebsocket().getSnapshotChunkSize());
+        List<Status> statuses = statusService.all();
+        List<byte[]> payloads = new ArrayList<>();
+        try {
+            for (int from = 0; from < statuses.size() || from == 0; from += chunkSize) {
+                List<Status> chunk = statuses.subList(from, Math.min(from + chunkSize, statuses.size()));
+                payloads.add(objectMapper.writeValueAsBytes(chunk));
+            }
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Could not serialize status snapshot", e);
+        }
+        return List.copyOf(payloads);
+    }
+
+    private record Chunks(long seq, List<byte[]> payloads) {
+    }
+}
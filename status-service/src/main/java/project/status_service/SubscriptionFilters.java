@@ -0,0 +1,168 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Server-side filters that a client attaches to a subscription with STOMP headers on {@code SUBSCRIBE}:
+ * <ul>
+ *   <li>{@value #USERNAME_PREFIX_FILTER}: only statuses of usernames starting with the value (case-insensitive)</li>
+ *   <li>{@value #STATUS_FILTER}: only statuses whose text is one of the comma-separated values</li>
+ * </ul>
+ * Broadcasts carry the username and status text as internal (non-STOMP) headers, and this interceptor on the
+ * client outbound channel drops each frame whose subscription filter does not match before it is encoded. Deletes
+ * carry only the username and are checked against the prefix alone. When a status changes from a text in a
+ * subscription's {@value #STATUS_FILTER} filter to one outside it, {@link WebSocketStatusController} also
+ * broadcasts a delete with the previous text; it reaches only the delete subscriptions whose filter held the
+ * previous text and not the new one, so those subscribers drop the status instead of keeping a stale entry.
+ * <p>
+ * A subscription with {@code accept: application/x-status} receives status updates encoded by
+ * {@link StatusMessageConverter} instead of JSON. The status travels with the broadcast as an internal header, and
+ * only frames for such subscriptions are encoded. Deletes stay JSON, their payload is just the id.
+ * <p>
+ * Every {@code MESSAGE} frame on its way to a subscriber is counted as delivered or filtered, which gives the
+ * fan-out of the broadcasts counted by {@link WebSocketStatusController}.
+ */
+@Component
+public class SubscriptionFilters implements ChannelInterceptor {
+
+    static final String USERNAME_PREFIX_FILTER = "username-prefix";
+    static final String STATUS_FILTER = "status";
+    static final String USERNAME_HEADER = "statusUsername";
+    static final String STATUS_TEXT_HEADER = "statusText";
+    static final String PREVIOUS_TEXT_HEADER = "statusPreviousText";
+    static final String ACCEPT_HEADER = "accept";
+    static final String STATUS_OBJECT_HEADER = "statusObject";
+
+    private final StatusMessageConverter binaryConverter = new StatusMessageConverter();
+
+    // session id -> subscription id -> filter, only for subscriptions that have one
+    private final Map<String, Map<String, Filter>> filters = new ConcurrentHashMap<>();
+
+    private final Counter delivered;
+    private final Counter filtered;
+
+    public SubscriptionFilters(MeterRegistry meterRegistry) {
+        this.delivered = fanOutCounter(meterRegistry, "delivered");
+        this.filtered = fanOutCounter(meterRegistry, "filtered");
+    }
+
+    // Adds the attributes filters look at to a broadcast; statusText is null for deletes
+    static void describe(SimpMessageHeaderAccessor headers, String username, String statusText) {
+        headers.setHeader(USERNAME_HEADER, username);
+        headers.setHeader(STATUS_TEXT_HEADER, statusText);
+    }
+
+    // Marks a delete as sent for a status that changed from previousText to the text it is described with
+    static void leaving(SimpMessageHeaderAccessor headers, String previousText) {
+        headers.setHeader(PREVIOUS_TEXT_HEADER, previousText);
+    }
+
+    static void attach(SimpMessageHeaderAccessor headers, Status status) {
+        headers.setHeader(STATUS_OBJECT_HEADER, status);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        Filter filter = filters.isEmpty() ? null : filterOf(headers);
+        String previousText = (String) headers.get(PREVIOUS_TEXT_HEADER);
+        if (filter == null && previousText == null) {
+            delivered.increment();
+            return message;
+        }
+        if (filter == null || !filter.matches((String) headers.get(USERNAME_HEADER),
+                (String) headers.get(STATUS_TEXT_HEADER), previousText)) {
+            filtered.increment();
+            return null;
+        }
+        delivered.increment();
+        if (filter.binary() && headers.get(STATUS_OBJECT_HEADER) instanceof Status status) {
+            MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+            accessor.setContentType(StatusMessageConverter.MIME_TYPE);
+            Message<?> encoded = binaryConverter.toMessage(status, accessor.getMessageHeaders());
+            return encoded != null ? encoded : message;
+        }
+        return message;
+    }
+
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String prefix = accessor.getFirstNativeHeader(USERNAME_PREFIX_FILTER);
+        String statuses = accessor.getFirstNativeHeader(STATUS_FILTER);
+        boolean binary = StatusCodec.MEDIA_TYPE.equals(accessor.getFirstNativeHeader(ACCEPT_HEADER));
+        if (prefix == null && statuses == null && !binary) {
+            return;
+        }
+        Filter filter = new Filter(prefix != null ? prefix.toLowerCase(Locale.ROOT) : null,
+                statuses != null ? Arrays.stream(statuses.split(",")).map(String::trim).collect(Collectors.toSet())
+                        : null, binary);
+        filters.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), filter);
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        filters.computeIfPresent(accessor.getSessionId(), (id, subscriptions) -> {
+            subscriptions.remove(accessor.getSubscriptionId());
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        filters.remove(event.getSessionId());
+    }
+
+    private Filter filterOf(MessageHeaders headers) {
+        Map<String, Filter> subscriptions = filters.get(SimpMessageHeaderAccessor.getSessionId(headers));
+        return subscriptions != null ? subscriptions.get(SimpMessageHeaderAccessor.getSubscriptionId(headers)) : null;
+    }
+
+    private static Counter fanOutCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("status.broadcast.frames")
+                .description("Broadcast frames addressed to a subscriber")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record Filter(String usernamePrefix, Set<String> statuses, boolean binary) {
+
+        // previousText is only set on the delete for a status that changed its text
+        boolean matches(String username, String statusText, String previousText) {
+            if (usernamePrefix != null && username != null
+                    && !username.toLowerCase(Locale.ROOT).startsWith(usernamePrefix)) {
+                return false;
+            }
+            if (previousText != null) {
+                return statuses != null && statuses.contains(previousText) && !statuses.contains(statusText);
+            }
+            return statuses == null || statusText == null || statuses.contains(statusText);
+        }
+    }
+}
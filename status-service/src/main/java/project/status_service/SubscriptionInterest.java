@@ -0,0 +1,64 @@
+package project.status_service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Set;
+
+/**
+ * The status topics the clients of one node subscribe to, pushed to peers with {@code POST /status/interest} in
+ * ownership mode. {@code all} means at least one client subscribes to the topics of every status; otherwise only
+ * changes in the listed groups have to reach the node.
+ */
+public class SubscriptionInterest {
+
+    private String node;
+    private boolean all;
+    private Set<String> groups = Set.of();
+
+    public SubscriptionInterest() {}
+
+    public SubscriptionInterest(String node, boolean all, Set<String> groups) {
+        this.node = node;
+        this.all = all;
+        this.groups = groups;
+    }
+
+    // Whether a change of a status in the given group (null for none) has to reach the node
+    public boolean wants(String group) {
+        return all || group != null && groups.contains(group);
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return !all && groups.isEmpty();
+    }
+
+    // Whether this interest covers something the other one did not
+    public boolean exceeds(SubscriptionInterest other) {
+        return !other.all && (all || !other.groups.containsAll(groups));
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    public void setAll(boolean all) {
+        this.all = all;
+    }
+
+    public Set<String> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(Set<String> groups) {
+        this.groups = groups;
+    }
+}
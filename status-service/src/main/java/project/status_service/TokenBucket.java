@@ -0,0 +1,41 @@
+package project.status_service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as a generic cell rate algorithm: the whole state is one "theoretical
+ * arrival time" that advances by one interval per accepted message, so {@link #tryAcquire} is a single CAS.
+ * Up to {@code burst} messages are accepted at once, then one per {@code 1 / ratePerSecond}.
+ */
+final class TokenBucket {
+
+    private final long interval;
+    private final long tolerance;
+    // Nanos at which the bucket is full again
+    private final AtomicLong fullAt;
+
+    TokenBucket(double ratePerSecond, int burst) {
+        this.interval = (long) (1_000_000_000L / ratePerSecond);
+        this.tolerance = interval * (Math.max(burst, 1) - 1);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            long base = Math.max(current, now);
+            if (base - now > tolerance) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, base + interval)) {
+                return true;
+            }
+        }
+    }
+
+    // A full bucket behaves exactly like a new one, so it can be dropped without losing anything
+    boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
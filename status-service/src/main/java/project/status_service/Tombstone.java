@@ -0,0 +1,56 @@
+package project.status_service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marker for a deleted status, kept for {@code status.sync.tombstone-ttl} so that peers catching up learn about
+ * the delete instead of re-creating the entry. Carries the version of the delete, which competes with upserts
+ * of the same id like any other write.
+ */
+public class Tombstone {
+    private Long id;
+    private LocalDateTime deletedAt;
+    private long version;
+    private int origin;
+
+    public Tombstone() {}
+
+    public Tombstone(Long id, LocalDateTime deletedAt, long version, int origin) {
+        this.id = id;
+        this.deletedAt = deletedAt;
+        this.version = version;
+        this.origin = origin;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(LocalDateTime deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public int getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(int origin) {
+        this.origin = origin;
+    }
+}
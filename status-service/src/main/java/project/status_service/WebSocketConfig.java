@@ -2,10 +2,16 @@ package project.status_service;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
+import java.util.concurrent.Executor;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -14,8 +20,23 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Value("${server.port}")
     private String port;
 
+    private final StatusProperties statusProperties;
+    private final ChannelExecutors channelExecutors;
+    private final RateLimitInterceptor rateLimitInterceptor;
+    private final SubscriptionFilters subscriptionFilters;
+
+    public WebSocketConfig(StatusProperties statusProperties, ChannelExecutors channelExecutors,
+            RateLimitInterceptor rateLimitInterceptor, SubscriptionFilters subscriptionFilters) {
+        this.statusProperties = statusProperties;
+        this.channelExecutors = channelExecutors;
+        this.rateLimitInterceptor = rateLimitInterceptor;
+        this.subscriptionFilters = subscriptionFilters;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
+        configureExecutor(config.configureBrokerChannel(), "broker-channel",
+                statusProperties.getChannels().getBroker());
         config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
@@ -27,4 +48,41 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .setAllowedOrigins("*");
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        configureExecutor(registration, "inbound-channel", statusProperties.getChannels().getInbound());
+        registration.interceptors(rateLimitInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        configureExecutor(registration, "outbound-channel", statusProperties.getChannels().getOutbound());
+        registration.interceptors(subscriptionFilters);
+    }
+
+    // Only used for messages that ask for application/x-status; the default converters still handle the rest
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(new StatusMessageConverter());
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        StatusProperties.Websocket config = statusProperties.getWebsocket();
+        registration.setSendTimeLimit((int) config.getSendTimeLimit().toMillis());
+        registration.setSendBufferSizeLimit((int) config.getSendBufferSizeLimit().toBytes());
+        if (config.isConflate()) {
+            registration.addDecoratorFactory(ConflatingSessionDecorator.factory(config));
+        }
+    }
+
+    private void configureExecutor(ChannelRegistration registration, String name,
+            StatusProperties.ChannelExecutor config) {
+        Executor executor = channelExecutors.create(name, config);
+        if (executor != null) {
+            registration.executor(executor);
+        }
+    }
 }
@@ -1,209 +1,229 @@
 package project.status_service;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-import org.springframework.beans.factory.annotation.Value;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
 import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
-import javax.annotation.PostConstruct;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
 @Controller
 public class WebSocketStatusController {
 
+    private static final Logger log = LoggerFactory.getLogger(WebSocketStatusController.class);
+
     private final SimpMessagingTemplate messagingTemplate;
     private final StatusService statusService;
 
     private final StatusProperties statusProperties;
-
-    private final Map<String, String> sessionUserMap = new ConcurrentHashMap<>();
-    private final Map<String, Long> lastSeenMap = new ConcurrentHashMap<>();
-    private final Map<String, List<Status>> replicationErrorQueue = new ConcurrentHashMap<>();
-
-    @Value("${server.port}")
-    private String currentPort;
+    private final PresenceDirectory presenceDirectory;
+    private final SessionRegistry sessionRegistry;
+    private final ReplicationDispatcher replicationDispatcher;
+    private final StatusSnapshot statusSnapshot;
+    private final InactivityTracker inactivityTracker;
+    private final Counter statusBroadcasts;
+    private final Counter deleteBroadcasts;
+    // status id -> text it was last broadcast with, to tell when a status leaves a subscription's status filter
+    private final Map<Long, String> broadcastTexts = new ConcurrentHashMap<>();
 
     public WebSocketStatusController(
             SimpMessagingTemplate messagingTemplate,
             StatusService statusService,
-            StatusProperties statusProperties) {
+            StatusProperties statusProperties,
+            PresenceDirectory presenceDirectory,
+            SessionRegistry sessionRegistry,
+            ReplicationDispatcher replicationDispatcher,
+            StatusSnapshot statusSnapshot,
+            InactivityTracker inactivityTracker,
+            MeterRegistry meterRegistry) {
         this.messagingTemplate = messagingTemplate;
         this.statusService = statusService;
         this.statusProperties = statusProperties;
+        this.presenceDirectory = presenceDirectory;
+        this.sessionRegistry = sessionRegistry;
+        this.replicationDispatcher = replicationDispatcher;
+        this.statusSnapshot = statusSnapshot;
+        this.inactivityTracker = inactivityTracker;
+        this.statusBroadcasts = broadcastCounter(meterRegistry, "status");
+        this.deleteBroadcasts = broadcastCounter(meterRegistry, "delete");
     }
 
     @MessageMapping("/status")
     public void handleStatus(StatusRequest req, SimpMessageHeaderAccessor accessor) {
-        // Store the session ID and username in a map for later use
         String sessionId = accessor.getSessionId();
         String username = req.getUsername();
 
-        String existingSession = getSessionIdForUsername(username);
-        // Block if the username is already connected from a different session
-        if (existingSession != null && !existingSession.equals(sessionId)) {
-            System.out.printf("[BLOCKED] Username '%s' already connected on this server from another session%n",
-                    username);
-            messagingTemplate.convertAndSendToUser(sessionId, "/queue/errors", "Username already in use.");
+        if (!StatusGroups.isValid(req.getGroup())) {
+            sendError(sessionId, "Invalid group, use letters, digits, '-' and '_' only.");
             return;
         }
 
-        // Check all peer servers (excluding current) if the username is already active,
-        // block if found
-        for (String peer : statusProperties.getPeers()) {
-            if (peer.contains(currentPort))
-                continue;
-
-            try {
-                String url = peer + "/status/username-active?username=" + username;
-                Boolean isActive = new RestTemplate().getForObject(url, Boolean.class);
-                if (Boolean.TRUE.equals(isActive)) {
-                    System.out.printf("[BLOCKED] Username '%s' already active on peer %s%n", username, peer);
-                    messagingTemplate.convertAndSendToUser(sessionId, "/queue/errors",
-                            "Username already in use on another server.");
-                    return;
-                }
-            } catch (Exception e) {
-                System.err.println("Failed to check peer " + peer + ": " + e.getMessage());
+        // The username is claimed once per session; later messages only compare against the claim
+        String previous = sessionRegistry.usernameOf(sessionId);
+        if (!username.equals(previous)) {
+            // Block if the username is already connected from a different session
+            if (!sessionRegistry.claim(sessionId, username)) {
+                log.info("Blocked username '{}', already connected on this server from another session", username);
+                sendError(sessionId, "Username already in use.");
+                return;
             }
-        }
 
-        sessionUserMap.putIfAbsent(sessionId, username);
-        lastSeenMap.put(username, System.currentTimeMillis());
+            // Block if another server holds the username, according to the replicated presence directory
+            if (!presenceDirectory.claim(username)) {
+                log.info("Blocked username '{}', already active on another server", username);
+                restoreClaim(sessionId, previous);
+                sendError(sessionId, "Username already in use on another server.");
+                return;
+            }
 
-        System.out.printf("[WS RECEIVE] %s -> '%s' from session %s%n",
-                req.getUsername(), req.getStatusText(), sessionId);
+            // A session that switches usernames gives up the previous one across the cluster
+            if (previous != null && !sameUsername(previous, username)) {
+                presenceDirectory.release(previous);
+            }
+        }
 
-        Status old = statusService.findByUsername(req.getUsername());
-        Status status = statusService.saveOrUpdate(req);
+        inactivityTracker.touch(username);
 
-        if (old == null) {
-            System.out.printf("[WS CREATE] %s -> '%s'%n", status.getUsername(), status.getStatustext());
-        } else {
-            System.out.printf("[WS UPDATE] %s: '%s' -> '%s'%n",
-                    old.getUsername(), old.getStatustext(), status.getStatustext());
+        // The previous status is only looked up for the log line
+        Status old = log.isDebugEnabled() ? statusService.findByUsername(username) : null;
+        Status status = statusService.saveOrUpdate(req);
+        if (log.isDebugEnabled()) {
+            log.debug("Status of {} from session {}: '{}' -> '{}'", username, sessionId,
+                    old != null ? old.getStatustext() : null, status.getStatustext());
         }
 
-        statusProperties.getPeers().forEach(peer -> {
-            if (!peer.contains(currentPort)) {
-                try {
-                    new RestTemplate().postForObject(peer + "/status/replicate", status, Void.class);
-                    System.out.println("[WS -> PEER] Replicated to " + peer);
-                } catch (Exception e) {
-                    System.err.println("Failed to replicate to peer " + peer + ": " + e.getMessage());
-                    replicationErrorQueue.putIfAbsent(peer, new java.util.ArrayList<>());
-                    System.err.println("Storing status in error queue for " + peer);
-                    List<Status> peerQueue = replicationErrorQueue.get(peer);
-                    if (!peerQueue.contains(status)) {
-                        peerQueue.add(status);
-                    }
-                    replicationErrorQueue.put(peer, peerQueue);
-                    // Print the list of statuses that failed to replicate
-                    for (Status s : peerQueue) {
-                        System.err.println("Replication error queue for " + peer + ": " + s.getUsername().toString());
-                    }
-                }
-            }
-        });
-
-        messagingTemplate.convertAndSend("/topic/status", status);
+        broadcastStatus(status);
+        replicationDispatcher.replicate(status);
     }
 
-    // Checks if client with that username already existsAdd commentMore actions
+    // Checks whether a client on this server uses the username
     @GetMapping("/status/username-active")
     public ResponseEntity<Boolean> isUsernameActive(@RequestParam String username) {
-        return ResponseEntity.ok(sessionUserMap.containsValue(username));
+        return ResponseEntity.ok(presenceDirectory.isClaimedLocally(username));
     }
 
+    // Sends the snapshot to the requesting session only, as JSON arrays that are serialized once per store change
     @MessageMapping("/request-statuses")
     public void sendStatusesToClient(SimpMessageHeaderAccessor accessor) {
-        System.out.println("[WS] Client requested all statuses");
-        statusService.all().forEach(status -> messagingTemplate.convertAndSend("/topic/init-status", status));
+        String sessionId = accessor.getSessionId();
+        List<byte[]> chunks = statusSnapshot.chunks();
+        log.debug("Session {} requested all statuses, sending {} message(s)", sessionId, chunks.size());
+        for (byte[] chunk : chunks) {
+            messagingTemplate.send("/user/" + sessionId + "/queue/init-status",
+                    MessageBuilder.createMessage(chunk, sessionHeaders(sessionId, MimeTypeUtils.APPLICATION_JSON)));
+        }
+    }
+
+    public void broadcastDelete(Status removed) {
+        broadcastDelete(removed.getId(), removed);
     }
 
-    public void broadcastDelete(Long id) {
-        messagingTemplate.convertAndSend("/topic/status-delete", id);
+    // removed may be null when this node did not have the status
+    public void broadcastDelete(Long id, Status removed) {
+        broadcastTexts.remove(id);
+        messagingTemplate.convertAndSend(StatusGroups.DELETE_TOPIC, id, broadcastHeaders(id, removed));
+        deleteBroadcasts.increment();
+        if (removed != null && removed.getGroup() != null) {
+            messagingTemplate.convertAndSend(StatusGroups.deleteTopic(removed.getGroup()), id,
+                    broadcastHeaders(id, removed));
+            deleteBroadcasts.increment();
+        }
     }
 
     public void broadcastStatus(Status status) {
-        messagingTemplate.convertAndSend("/topic/status", status);
+        String previousText = broadcastTexts.put(status.getId(), status.getStatustext());
+        messagingTemplate.convertAndSend(StatusGroups.STATUS_TOPIC, status, statusHeaders(status));
+        statusBroadcasts.increment();
+        if (status.getGroup() != null) {
+            messagingTemplate.convertAndSend(StatusGroups.statusTopic(status.getGroup()), status,
+                    statusHeaders(status));
+            statusBroadcasts.increment();
+        }
+        if (previousText != null && !previousText.equals(status.getStatustext())) {
+            broadcastLeaving(status, previousText);
+        }
+    }
+
+    // A delete for the subscriptions whose status filter matched the previous text but not the new one
+    private void broadcastLeaving(Status status, String previousText) {
+        messagingTemplate.convertAndSend(StatusGroups.DELETE_TOPIC, status.getId(),
+                leavingHeaders(status, previousText));
+        deleteBroadcasts.increment();
+        if (status.getGroup() != null) {
+            messagingTemplate.convertAndSend(StatusGroups.deleteTopic(status.getGroup()), status.getId(),
+                    leavingHeaders(status, previousText));
+            deleteBroadcasts.increment();
+        }
     }
 
     @EventListener
     public void handleSessionConnected(SessionConnectedEvent event) {
-        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
-        String sessionId = accessor.getSessionId();
-        System.out.println("[WS] Client connected with session ID: " + sessionId);
-    }
-
-    @PostConstruct
-    public void init() {
-        System.out.println("[INIT] Inactivity cleaner scheduled");
-    }
-
-    @Scheduled(fixedRate = 5) // 5 seconds
-    public void cleanupInactiveStatuses() {
-        long now = System.currentTimeMillis();
-        long timeoutInactive = 120 * 1000; // 2min
-        long timeoutRemove = 300 * 1000; // 5min
-
-        lastSeenMap.forEach((username, lastSeen) -> {
-            // Check if the user is inactive
-            if (now - lastSeen > timeoutInactive) {
-                Status status = statusService.findByUsername(username);
-                if (status != null && !status.getStatustext().equals("Inactive")) {
-                    System.out.printf("[CLEANUP] Change status of inactive user: %s%n", username);
-                    StatusRequest req = new StatusRequest(username, "Inactive");
-                    Status newStatus = statusService.update(status.getId(), req);
-
-                    broadcastStatus(newStatus);
-                    statusProperties.getPeers().forEach(peer -> {
-                        if (!peer.contains(currentPort)) {
-                            try {
-                                new RestTemplate().postForObject(peer + "/status/replicate", newStatus, Void.class);
-                            } catch (Exception e) {
-                                System.err.println("Failed to replicate inactive change: " + e.getMessage());
-                            }
-                        }
-                    });
-                }
-            }
-            // Check if the user needs to be removed
-            if (now - lastSeen > timeoutRemove) {
-                handleUserDisconnect(username);
-                lastSeenMap.remove(username);
-            }
-        });
-    }
-
-    @Scheduled(fixedRate = 30000) // 30 seconds
-    public void CheckForReplicationErrors() {
-        replicationErrorQueue.forEach((peer, statuses) -> {
-            boolean success = true;
-            for (Status status : statuses) {
-                try {
-                    new RestTemplate().postForObject(peer + "/status/replicate", status, Void.class);
-                    System.out.println("[RETRY] Successfully replicated to " + peer + ": " + status.getUsername());
-                    // Clear the queue after successful replication
-                } catch (Exception e) {
-                    System.err.println("[RETRY FAILED] Could not replicate to " + peer + ": " + e.getMessage());
-                    success = false;
-                }
-            }
-            if (success) {
-                replicationErrorQueue.remove(peer);
+        if (log.isDebugEnabled()) {
+            log.debug("Client connected with session ID {}",
+                    StompHeaderAccessor.wrap(event.getMessage()).getSessionId());
+        }
+    }
+
+    // The status itself stays until the inactivity timeouts; only the username is free again
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        String username = sessionRegistry.release(event.getSessionId());
+        if (username != null) {
+            log.debug("Session {} of user {} closed", event.getSessionId(), username);
+            presenceDirectory.release(username);
+        }
+    }
+
+    @EventListener
+    public void handleMessageRejected(MessageRejectedEvent event) {
+        sendError(event.sessionId(), event.reason());
+    }
+
+    // Another node claimed the username first; the local session has to pick a different one
+    @EventListener
+    public void handlePresenceLost(PresenceLostEvent event) {
+        String sessionId = sessionRegistry.releaseUsername(event.username());
+        if (sessionId != null) {
+            sendError(sessionId, "Username already in use on another server.");
+        }
+    }
+
+    @EventListener
+    public void handleInactivity(InactivityEvent event) {
+        String username = event.username();
+        if (event.phase() == InactivityEvent.Phase.INACTIVE) {
+            Status status = statusService.findByUsername(username);
+            if (status != null && !status.getStatustext().equals("Inactive")) {
+                log.debug("Changing status of inactive user {}", username);
+                StatusRequest req = new StatusRequest(username, "Inactive", status.getGroup());
+                Status newStatus = statusService.update(status.getId(), req);
+
+                broadcastStatus(newStatus);
+                replicationDispatcher.replicate(newStatus);
             }
-        });
+        } else {
+            sessionRegistry.releaseUsername(username);
+            handleUserDisconnect(username);
+        }
     }
 
     @MessageMapping("/disconnect")
@@ -211,43 +231,92 @@ public class WebSocketStatusController {
         String sessionId = accessor.getSessionId();
         String username = req.getUsername();
 
-        System.out.printf("[MANUAL DISCONNECT] User %s manually disconnected%n", username);
-        sessionUserMap.remove(sessionId);
-        lastSeenMap.remove(username);
+        log.debug("User {} disconnected manually", username);
+        sessionRegistry.release(sessionId);
+        inactivityTracker.forget(username);
         handleUserDisconnect(username);
     }
 
     private void handleUserDisconnect(String username) {
+        presenceDirectory.release(username);
+
         Status status = statusService.findByUsername(username);
         if (status != null) {
-            System.out.printf("[WS DISCONNECT] Removing status for user: %s%n", username);
+            log.debug("Removing status of user {}", username);
 
             // Delete the status
-            statusService.delete(status.getId());
+            Tombstone tombstone = statusService.delete(status.getId());
+
+            // Broadcast deletion to other clients
+            broadcastDelete(status);
 
             // Notify peers
-            statusProperties.getPeers().forEach(peer -> {
-                if (!peer.contains(currentPort)) {
-                    try {
-                        new RestTemplate().delete(peer + "/status/replicate/" + status.getId());
-                        System.out.println("[WS DISCONNECT -> PEER] Replicated delete to " + peer);
-                    } catch (Exception e) {
-                        System.err.println("Failed to replicate delete to peer " + peer + ": " + e.getMessage());
-                    }
-                }
-            });
+            replicationDispatcher.replicateDelete(tombstone, status.getUsername());
+        }
+    }
 
-            // Broadcast deletion to other clients
-            broadcastDelete(status.getId());
+    // Gives the session its previous username back after a refused switch, or drops both if that is taken now
+    private void restoreClaim(String sessionId, String previous) {
+        if (previous == null) {
+            sessionRegistry.release(sessionId);
+        } else if (!sessionRegistry.claim(sessionId, previous)) {
+            sessionRegistry.release(sessionId);
+            presenceDirectory.release(previous);
         }
     }
 
-    // Returns the session ID for the given username if connected, otherwise null
-    private String getSessionIdForUsername(String username) {
-        return sessionUserMap.entrySet().stream()
-                .filter(entry -> username.equals(entry.getValue()))
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElse(null);
+    private static boolean sameUsername(String a, String b) {
+        return a.toLowerCase(Locale.ROOT).equals(b.toLowerCase(Locale.ROOT));
+    }
+
+    // The status id header lets a slow session's outbound buffer drop superseded frames (ConflatingSessionDecorator);
+    // username and text are internal headers that SubscriptionFilters match against. Deletes carry no text, so a
+    // status filter never holds them back.
+    private static MessageHeaders broadcastHeaders(Long id, Status removed) {
+        return broadcastAccessor(id, removed != null ? removed.getUsername() : null, null).getMessageHeaders();
+    }
+
+    // Also carries the status itself, for subscriptions that receive it in binary
+    private static MessageHeaders statusHeaders(Status status) {
+        SimpMessageHeaderAccessor headers = broadcastAccessor(status.getId(), status.getUsername(),
+                status.getStatustext());
+        SubscriptionFilters.attach(headers, status);
+        return headers.getMessageHeaders();
+    }
+
+    private static MessageHeaders leavingHeaders(Status status, String previousText) {
+        SimpMessageHeaderAccessor headers = broadcastAccessor(status.getId(), status.getUsername(),
+                status.getStatustext());
+        SubscriptionFilters.leaving(headers, previousText);
+        return headers.getMessageHeaders();
+    }
+
+    private static SimpMessageHeaderAccessor broadcastAccessor(Long id, String username, String statusText) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setNativeHeader(ConflatingSessionDecorator.STATUS_ID_HEADER, id.toString());
+        SubscriptionFilters.describe(headers, username, statusText);
+        headers.setLeaveMutable(true);
+        return headers;
+    }
+
+    private static Counter broadcastCounter(MeterRegistry meterRegistry, String type) {
+        return Counter.builder("status.broadcasts")
+                .description("Messages published to a broadcast topic, each fanned out to every subscriber")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    private void sendError(String sessionId, String error) {
+        messagingTemplate.convertAndSendToUser(sessionId, "/queue/errors", error,
+                sessionHeaders(sessionId, MimeTypeUtils.TEXT_PLAIN));
+    }
+
+    // Headers that route a user destination message to one session, independent of any principal
+    private static MessageHeaders sessionHeaders(String sessionId, MimeType contentType) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setContentType(contentType);
+        headers.setLeaveMutable(true);
+        return headers.getMessageHeaders();
     }
 }
@@ -0,0 +1,17 @@
+package project.status_service;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WireFormatConfig implements WebMvcConfigurer {
+
+    // Added last, so JSON stays the default and the binary format is only used when asked for
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new StatusHttpMessageConverter());
+    }
+}
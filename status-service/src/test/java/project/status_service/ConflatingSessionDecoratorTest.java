@@ -0,0 +1,113 @@
+package project.status_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ConflatingSessionDecoratorTest {
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch sending = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ConflatingSessionDecorator session = new ConflatingSessionDecorator(blockingSession(), 10_000,
+            1024 * 1024);
+
+    @Test
+    void newerFrameForAStatusReplacesThePendingOne() throws Exception {
+        holdFirstSend();
+        session.sendMessage(frame("sub-0", 1, "v1"));
+        session.sendMessage(frame("sub-0", 1, "v2"));
+        session.sendMessage(frame("sub-0", 2, "other"));
+        release.countDown();
+
+        assertThat(awaitSent(3)).containsExactly("first", "v2", "other");
+    }
+
+    @Test
+    void updateAfterADeleteIsDeliveredAfterTheDelete() throws Exception {
+        holdFirstSend();
+        session.sendMessage(frame("sub-0", 1, "update"));
+        session.sendMessage(frame("sub-1", 1, "delete"));
+        session.sendMessage(frame("sub-0", 1, "update again"));
+        release.countDown();
+
+        assertThat(awaitSent(3)).containsExactly("first", "delete", "update again");
+    }
+
+    @Test
+    void framesWithoutStatusIdAreNeverConflated() throws Exception {
+        holdFirstSend();
+        session.sendMessage(new TextMessage("MESSAGE\nsubscription:sub-0\n\nplain\0"));
+        session.sendMessage(new TextMessage("MESSAGE\nsubscription:sub-0\n\nplain\0"));
+        release.countDown();
+
+        assertThat(awaitSent(3)).containsExactly("first", "plain", "plain");
+    }
+
+    @Test
+    void failedSendClosesTheSessionAndDropsLaterFrames() throws Exception {
+        WebSocketSession delegate = mock(WebSocketSession.class);
+        doThrow(new IOException("broken pipe")).when(delegate).sendMessage(any());
+        ConflatingSessionDecorator failing = new ConflatingSessionDecorator(delegate, 10_000, 1024 * 1024);
+
+        failing.sendMessage(frame("sub-0", 1, "lost"));
+
+        verify(delegate, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        failing.sendMessage(frame("sub-0", 2, "dropped"));
+        Thread.sleep(50);
+        verify(delegate, times(1)).sendMessage(any());
+    }
+
+    // Sends a frame and keeps the sending thread busy with it until release
+    private void holdFirstSend() throws Exception {
+        session.sendMessage(frame("sub-9", 99, "first"));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private List<String> awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        return sent;
+    }
+
+    private WebSocketSession blockingSession() {
+        WebSocketSession delegate = mock(WebSocketSession.class);
+        try {
+            doAnswer(invocation -> {
+                String payload = ((WebSocketMessage<?>) invocation.getArgument(0)).getPayload().toString();
+                sent.add(payload.substring(payload.indexOf("\n\n") + 2, payload.length() - 1));
+                sending.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            }).when(delegate).sendMessage(any());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return delegate;
+    }
+
+    private static TextMessage frame(String subscription, long statusId, String body) {
+        return new TextMessage("MESSAGE\nsubscription:" + subscription + "\n"
+                + ConflatingSessionDecorator.STATUS_ID_HEADER + ":" + statusId + "\n\n" + body + "\0");
+    }
+}
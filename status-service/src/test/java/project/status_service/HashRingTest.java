@@ -0,0 +1,82 @@
+package project.status_service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashRingTest {
+
+    private static final List<String> USERNAMES = IntStream.range(0, 10_000).mapToObj(i -> "user" + i).toList();
+
+    @Test
+    void everyUsernameHasReplicationFactorDistinctReplicas() {
+        HashRing ring = new HashRing(List.of("a", "b", "c", "d", "e"), 64, 3);
+
+        for (String username : USERNAMES) {
+            List<String> replicas = ring.replicas(username);
+            assertThat(replicas).hasSize(3).doesNotHaveDuplicates();
+            assertThat(ring.isReplica(replicas.get(0), username)).isTrue();
+        }
+    }
+
+    @Test
+    void replicationFactorIsCappedAtTheNumberOfMembers() {
+        HashRing ring = new HashRing(List.of("a", "b"), 64, 3);
+
+        assertThat(ring.replicas("alice")).containsExactlyInAnyOrder("a", "b");
+        assertThat(new HashRing(List.of(), 64, 3).replicas("alice")).isEmpty();
+    }
+
+    @Test
+    void everyNodeBuildsTheSameRingAndLookupsIgnoreCase() {
+        HashRing one = new HashRing(List.of("a", "b", "c"), 64, 2);
+        HashRing other = new HashRing(List.of("c", "a", "b", "a"), 64, 2);
+
+        for (String username : USERNAMES.subList(0, 1000)) {
+            assertThat(other.replicas(username)).isEqualTo(one.replicas(username));
+            assertThat(one.replicas(username.toUpperCase())).isEqualTo(one.replicas(username));
+        }
+    }
+
+    @Test
+    void joiningNodeOnlyTakesUsernamesOverAndGetsItsShare() {
+        HashRing before = new HashRing(List.of("a", "b", "c"), 128, 1);
+        HashRing after = new HashRing(List.of("a", "b", "c", "d"), 128, 1);
+
+        int moved = 0;
+        for (String username : USERNAMES) {
+            String owner = after.replicas(username).get(0);
+            if (!owner.equals(before.replicas(username).get(0))) {
+                assertThat(owner).isEqualTo("d");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(USERNAMES.size() / 8, USERNAMES.size() * 3 / 8);
+    }
+
+    @Test
+    void leavingNodeOnlyHandsOverItsOwnUsernames() {
+        HashRing before = new HashRing(List.of("a", "b", "c", "d"), 128, 2);
+        HashRing after = new HashRing(List.of("a", "b", "c"), 128, 2);
+
+        for (String username : USERNAMES) {
+            List<String> replicas = before.replicas(username);
+            if (!replicas.contains("d")) {
+                assertThat(after.replicas(username)).isEqualTo(replicas);
+            } else {
+                // The remaining replica stays, the next node on the ring fills the gap
+                assertThat(after.replicas(username))
+                        .containsAll(replicas.stream().filter(m -> !m.equals("d")).toList());
+            }
+        }
+    }
+
+    @Test
+    void neighborsAreTheNodesSharingAReplicaSet() {
+        assertThat(new HashRing(List.of("a", "b", "c"), 64, 1).neighbors("a")).isEmpty();
+        assertThat(new HashRing(List.of("a", "b", "c"), 64, 3).neighbors("a")).containsExactly("b", "c");
+    }
+}
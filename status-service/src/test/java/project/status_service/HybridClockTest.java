@@ -0,0 +1,68 @@
+package project.status_service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HybridClockTest {
+
+    private final HybridClock clock = new HybridClock(properties(3));
+
+    @Test
+    void versionsOfOneNodeAlwaysGrow() {
+        long previous = clock.now();
+        for (int i = 0; i < 10_000; i++) {
+            long next = clock.now();
+            assertThat(next).isGreaterThan(previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void versionFollowsTheWallClock() {
+        long wallMillis = System.currentTimeMillis() - HybridClock.EPOCH_MILLIS;
+
+        long millis = clock.now() >>> HybridClock.LOGICAL_BITS;
+
+        assertThat(millis).isBetween(wallMillis, wallMillis + 1000);
+    }
+
+    @Test
+    void versionAfterARemoteOneAheadOfLocalTimeIsLarger() {
+        long remote = clock.now() + (60_000L << HybridClock.LOGICAL_BITS);
+
+        clock.observe(remote);
+
+        assertThat(clock.now()).isEqualTo(remote + 1);
+        assertThat(clock.now()).isEqualTo(remote + 2);
+    }
+
+    @Test
+    void versionBehindLocalTimeIsIgnored() {
+        long local = clock.now();
+
+        clock.observe(local - (60_000L << HybridClock.LOGICAL_BITS));
+
+        assertThat(clock.now()).isGreaterThan(local);
+    }
+
+    @Test
+    void writesAreOrderedByVersionThenOrigin() {
+        assertThat(HybridClock.isAfter(2, 1, 1, 9)).isTrue();
+        assertThat(HybridClock.isAfter(1, 9, 2, 1)).isFalse();
+        assertThat(HybridClock.isAfter(5, 2, 5, 1)).isTrue();
+        assertThat(HybridClock.isAfter(5, 1, 5, 2)).isFalse();
+        assertThat(HybridClock.isAfter(5, 1, 5, 1)).isFalse();
+    }
+
+    @Test
+    void originIsTheNodeId() {
+        assertThat(clock.node()).isEqualTo(3);
+    }
+
+    static StatusProperties properties(int nodeId) {
+        StatusProperties properties = new StatusProperties();
+        properties.setNodeId(nodeId);
+        return properties;
+    }
+}
@@ -0,0 +1,119 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InactivityTrackerTest {
+
+    private static final long INACTIVE_AFTER = 200;
+    private static final long REMOVE_AFTER = 400;
+
+    private final List<Fired> fired = new CopyOnWriteArrayList<>();
+    private InactivityTracker tracker;
+
+    @BeforeEach
+    void startTracker() {
+        StatusProperties properties = new StatusProperties();
+        properties.getInactivity().setInactiveAfter(Duration.ofMillis(INACTIVE_AFTER));
+        properties.getInactivity().setRemoveAfter(Duration.ofMillis(REMOVE_AFTER));
+        tracker = new InactivityTracker(properties,
+                event -> fired.add(new Fired((InactivityEvent) event, System.currentTimeMillis())),
+                new SimpleMeterRegistry());
+        tracker.start();
+    }
+
+    @AfterEach
+    void stopTracker() {
+        tracker.stop();
+    }
+
+    @Test
+    void firesInactiveAndThenExpired() throws InterruptedException {
+        long touchedAt = System.currentTimeMillis();
+        tracker.touch("alice");
+
+        awaitFired(2);
+
+        assertThat(fired).extracting(Fired::event).containsExactly(
+                new InactivityEvent("alice", InactivityEvent.Phase.INACTIVE),
+                new InactivityEvent("alice", InactivityEvent.Phase.EXPIRED));
+        assertThat(fired.get(0).at() - touchedAt).isGreaterThanOrEqualTo(INACTIVE_AFTER);
+        assertThat(fired.get(1).at() - touchedAt).isGreaterThanOrEqualTo(REMOVE_AFTER);
+    }
+
+    @Test
+    void touchPostponesExpiry() throws InterruptedException {
+        tracker.touch("alice");
+        Thread.sleep(120);
+        long touchedAt = System.currentTimeMillis();
+        tracker.touch("alice");
+
+        // Past the first deadline, which is re-armed rather than fired
+        Thread.sleep(130);
+        assertThat(fired).isEmpty();
+
+        awaitFired(2);
+        assertThat(fired.get(0).at() - touchedAt).isGreaterThanOrEqualTo(INACTIVE_AFTER);
+        assertThat(fired.get(1).at() - touchedAt).isGreaterThanOrEqualTo(REMOVE_AFTER);
+    }
+
+    @Test
+    void touchAfterInactiveStartsOver() throws InterruptedException {
+        tracker.touch("alice");
+        awaitFired(1);
+        long touchedAt = System.currentTimeMillis();
+        tracker.touch("alice");
+
+        awaitFired(3);
+
+        assertThat(fired).extracting(f -> f.event().phase()).containsExactly(InactivityEvent.Phase.INACTIVE,
+                InactivityEvent.Phase.INACTIVE, InactivityEvent.Phase.EXPIRED);
+        assertThat(fired.get(2).at() - touchedAt).isGreaterThanOrEqualTo(REMOVE_AFTER);
+    }
+
+    @Test
+    void forgetCancelsBothDeadlines() throws InterruptedException {
+        tracker.touch("alice");
+        tracker.touch("bob");
+        tracker.forget("alice");
+
+        awaitFired(2);
+        Thread.sleep(100);
+
+        assertThat(fired).extracting(f -> f.event().username()).containsOnly("bob");
+    }
+
+    @Test
+    void spellingsOfOneUsernameShareTheirDeadlines() throws InterruptedException {
+        tracker.touch("Alice");
+        tracker.touch("alice");
+        tracker.touch("Bob");
+        tracker.forget("BOB");
+
+        awaitFired(2);
+        Thread.sleep(100);
+
+        assertThat(fired).extracting(Fired::event).containsExactly(
+                new InactivityEvent("alice", InactivityEvent.Phase.INACTIVE),
+                new InactivityEvent("alice", InactivityEvent.Phase.EXPIRED));
+    }
+
+    private void awaitFired(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fired.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(fired).hasSizeGreaterThanOrEqualTo(count);
+    }
+
+    private record Fired(InactivityEvent event, long at) {
+    }
+}
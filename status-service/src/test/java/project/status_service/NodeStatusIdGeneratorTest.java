@@ -0,0 +1,114 @@
+package project.status_service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NodeStatusIdGeneratorTest {
+
+    private static final int SHIFT = NodeStatusIdGenerator.NODE_BITS + NodeStatusIdGenerator.SEQUENCE_BITS;
+
+    @Test
+    void idHoldsSecondsNodeAndSequenceInFiftyThreeBits() {
+        NodeStatusIdGenerator generator = generator(5);
+        long now = System.currentTimeMillis() / 1000 - NodeStatusIdGenerator.EPOCH_SECONDS;
+
+        long first = generator.nextId();
+        long second = generator.nextId();
+
+        assertThat(first).isPositive().isLessThan(1L << 53);
+        assertThat(first >>> SHIFT).isBetween(now, now + 1);
+        assertThat((first >>> NodeStatusIdGenerator.SEQUENCE_BITS) & NodeStatusIdGenerator.MAX_NODE_ID).isEqualTo(5);
+        assertThat(second).isEqualTo(first + 1);
+    }
+
+    @Test
+    void nodeIdOutOfRangeIsRejected() {
+        assertThatThrownBy(() -> generator(NodeStatusIdGenerator.MAX_NODE_ID + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> generator(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void idsAreUniqueUnderContention() throws InterruptedException {
+        NodeStatusIdGenerator generator = generator(1);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        int threads = 8;
+        int perThread = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(generator.nextId());
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // More than one second's worth of sequence numbers, so some were borrowed from later seconds
+        assertThat(ids).hasSize(threads * perThread);
+    }
+
+    @Test
+    void nodesNeverShareIds() {
+        NodeStatusIdGenerator one = generator(1);
+        NodeStatusIdGenerator two = generator(2);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(one.nextId());
+            ids.add(two.nextId());
+        }
+
+        assertThat(ids).hasSize(2000);
+    }
+
+    @Test
+    void restartedGeneratorContinuesAfterObservedIds() {
+        NodeStatusIdGenerator before = generator(3);
+        Set<Long> issued = new HashSet<>();
+        // A burst that borrows from the following seconds
+        for (int i = 0; i < 40_000; i++) {
+            issued.add(before.nextId());
+        }
+
+        NodeStatusIdGenerator restarted = generator(3);
+        issued.forEach(restarted::observe);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(issued.add(restarted.nextId())).isTrue();
+        }
+    }
+
+    @Test
+    void idsOfOtherNodesAreNotObserved() {
+        NodeStatusIdGenerator other = generator(4);
+        long far = other.nextId() + (3600L << SHIFT);
+
+        NodeStatusIdGenerator generator = generator(3);
+        generator.observe(far);
+        long now = System.currentTimeMillis() / 1000 - NodeStatusIdGenerator.EPOCH_SECONDS;
+
+        assertThat(generator.nextId() >>> SHIFT).isBetween(now, now + 1);
+    }
+
+    private static NodeStatusIdGenerator generator(int nodeId) {
+        return new NodeStatusIdGenerator(HybridClockTest.properties(nodeId));
+    }
+}
@@ -0,0 +1,177 @@
+package project.status_service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OwnershipDirectoryTest {
+
+    private final StatusProperties properties = new StatusProperties();
+    private final PeerRegistry peerRegistry = mock(PeerRegistry.class);
+    private final PeerClient peerClient = mock(PeerClient.class);
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+    private final OwnershipDirectory directory = new OwnershipDirectory(peerRegistry, peerClient, properties,
+            events::add);
+
+    @BeforeEach
+    void threeNodes() {
+        properties.getOwnership().setEnabled(true);
+        properties.getOwnership().setReplicationFactor(1);
+        properties.getOwnership().setVirtualNodes(64);
+        List<PeerRegistry.Peer> peers = List.of(new PeerRegistry.Peer("2", "http://two"),
+                new PeerRegistry.Peer("3", "http://three"));
+        when(peerRegistry.selfId()).thenReturn("1");
+        when(peerRegistry.peers()).thenReturn(peers);
+        when(peerRegistry.urls()).thenReturn(List.of("http://two", "http://three"));
+        when(peerRegistry.url("2")).thenReturn("http://two");
+        when(peerRegistry.url("3")).thenReturn("http://three");
+        when(peerClient.publishInterest(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void changesReachTheOwnerAndPeersWithUnknownInterest() {
+        String ownedByTwo = ownedBy("2");
+        String ownedByThree = ownedBy("3");
+
+        assertThat(directory.shouldReplicate("2", upsert(ownedByTwo, null))).isTrue();
+        // Nothing is known about what the clients of 2 want yet
+        assertThat(directory.shouldReplicate("2", upsert(ownedByThree, null))).isTrue();
+
+        directory.apply(new SubscriptionInterest("2", false, Set.of()));
+        assertThat(directory.shouldReplicate("2", upsert(ownedByTwo, null))).isTrue();
+        assertThat(directory.shouldReplicate("2", upsert(ownedByThree, null))).isFalse();
+        assertThat(directory.shouldReplicate("2", delete(ownedByThree))).isFalse();
+    }
+
+    @Test
+    void changesReachPeersWhoseClientsSubscribe() {
+        String ownedByThree = ownedBy("3");
+
+        directory.apply(new SubscriptionInterest("2", false, Set.of("team")));
+        assertThat(directory.shouldReplicate("2", upsert(ownedByThree, "team"))).isTrue();
+        assertThat(directory.shouldReplicate("2", upsert(ownedByThree, "other"))).isFalse();
+        assertThat(directory.shouldReplicate("2", upsert(ownedByThree, null))).isFalse();
+        // A delete only carries the id, so it goes to every peer with subscribers
+        assertThat(directory.shouldReplicate("2", delete(ownedByThree))).isTrue();
+
+        directory.apply(new SubscriptionInterest("2", true, Set.of()));
+        assertThat(directory.shouldReplicate("2", upsert(ownedByThree, null))).isTrue();
+    }
+
+    @Test
+    void deletesWithoutUsernameGoEverywhere() {
+        directory.apply(new SubscriptionInterest("2", false, Set.of()));
+
+        assertThat(directory.shouldReplicate("2", ReplicationOp.delete(
+                new Tombstone(1L, LocalDateTime.now(), 1, 1), null))).isTrue();
+    }
+
+    @Test
+    void nodeFilterCoversWhatBothNodesKeep() {
+        properties.getOwnership().setReplicationFactor(2);
+        String shared = shared("1", "2");
+        String onlyOurs = shared("1", "3");
+        String onlyTheirs = shared("2", "3");
+
+        assertThat(directory.filterFor(null)).isNull();
+        Predicate<Status> filter = directory.filterFor("2");
+        assertThat(filter.test(status(shared, null))).isTrue();
+        assertThat(filter.test(status(onlyOurs, null))).isFalse();
+        assertThat(filter.test(status(onlyTheirs, null))).isFalse();
+
+        // A node whose clients subscribe to everything keeps everything, so only this node's share is left
+        directory.apply(new SubscriptionInterest("2", true, Set.of()));
+        filter = directory.filterFor("2");
+        assertThat(filter.test(status(onlyOurs, null))).isTrue();
+        assertThat(filter.test(status(onlyTheirs, null))).isFalse();
+
+        directory.apply(new SubscriptionInterest("2", false, Set.of("team")));
+        filter = directory.filterFor("2");
+        assertThat(filter.test(status(onlyOurs, "team"))).isTrue();
+        assertThat(filter.test(status(onlyOurs, "other"))).isFalse();
+    }
+
+    @Test
+    void nodeFilterIsOffWithoutOwnership() {
+        properties.getOwnership().setEnabled(false);
+
+        assertThat(directory.filterFor("2")).isNull();
+    }
+
+    @Test
+    void localSubscribersWidenTheFilterAndTheSyncPartners() throws InterruptedException {
+        String onlyTheirs = ownedBy("2");
+        directory.apply(new SubscriptionInterest("2", true, Set.of()));
+        assertThat(directory.filterFor("2").test(status(onlyTheirs, "team"))).isFalse();
+        assertThat(directory.syncPartners()).isEmpty();
+
+        subscribe(StatusGroups.statusTopic("team"));
+        awaitInterestEvent();
+
+        assertThat(directory.filterFor("2").test(status(onlyTheirs, "team"))).isTrue();
+        assertThat(directory.filterFor("2").test(status(onlyTheirs, "other"))).isFalse();
+        assertThat(directory.syncPartners()).containsExactly("http://two", "http://three");
+        assertThat(events).singleElement().isInstanceOfSatisfying(InterestEvent.class,
+                event -> assertThat(event.grew()).isTrue());
+    }
+
+    private String ownedBy(String node) {
+        return usernames().filter(u -> directory.owners(u).get(0).equals(node)).findFirst().orElseThrow();
+    }
+
+    private String shared(String first, String second) {
+        return usernames().filter(u -> Set.copyOf(directory.owners(u)).equals(Set.of(first, second)))
+                .findFirst().orElseThrow();
+    }
+
+    private static Stream<String> usernames() {
+        return IntStream.range(0, 10_000).mapToObj(i -> "user" + i);
+    }
+
+    private void subscribe(String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId("session");
+        accessor.setSubscriptionId("sub");
+        accessor.setDestination(destination);
+        directory.handleSubscribe(new SessionSubscribeEvent(this,
+                MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders())));
+    }
+
+    private void awaitInterestEvent() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (events.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Status status(String username, String group) {
+        Status status = new Status(1L, username, "Online", LocalDateTime.of(2025, 6, 1, 12, 0), 1, 1);
+        status.setGroup(group);
+        return status;
+    }
+
+    private static ReplicationOp upsert(String username, String group) {
+        return ReplicationOp.upsert(status(username, group));
+    }
+
+    private static ReplicationOp delete(String username) {
+        return ReplicationOp.delete(new Tombstone(1L, LocalDateTime.now(), 1, 1), username);
+    }
+}
@@ -0,0 +1,149 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PresenceDirectoryTest {
+
+    private final Node one = new Node(1);
+    private final Node two = new Node(2);
+
+    @Test
+    void concurrentClaimsEndWithTheSameOwnerOnBothNodes() {
+        assertThat(one.directory.claim("Alice")).isTrue();
+        assertThat(two.directory.claim("alice")).isTrue();
+
+        // Each node learns of the other's claim only afterwards
+        one.directory.apply(two.takePublished());
+        two.directory.apply(one.takePublished());
+
+        // Node 1 claimed first, or in the same tick and wins on the lower node id
+        assertThat(one.directory.isClaimedLocally("alice")).isTrue();
+        assertThat(two.directory.isClaimedLocally("alice")).isFalse();
+        assertThat(two.directory.claim("ALICE")).isFalse();
+        assertThat(one.events).isEmpty();
+        assertThat(two.events).containsExactly(new PresenceLostEvent("alice", 1));
+    }
+
+    @Test
+    void claimsWithTheSameVersionAreDecidedByTheNodeId() {
+        Node three = new Node(3);
+        three.directory.claim("bob");
+        long version = three.takePublished().get(0).getVersion();
+
+        three.directory.apply(List.of(claim("bob", 4, version)));
+        assertThat(three.directory.isClaimedLocally("bob")).isTrue();
+
+        three.directory.apply(List.of(claim("bob", 2, version)));
+        assertThat(three.directory.isClaimedLocally("bob")).isFalse();
+        assertThat(three.events).containsExactly(new PresenceLostEvent("bob", 2));
+    }
+
+    @Test
+    void laterRemoteClaimDoesNotTakeALocalClaim() {
+        one.directory.claim("alice");
+
+        one.directory.apply(List.of(claim("alice", 2, one.clock.now() + 1)));
+
+        assertThat(one.directory.isClaimedLocally("alice")).isTrue();
+        assertThat(one.events).isEmpty();
+    }
+
+    @Test
+    void releasedClaimCanBeTakenByAnotherNode() {
+        one.directory.claim("alice");
+        two.directory.apply(one.takePublished());
+        assertThat(two.directory.claim("alice")).isFalse();
+
+        one.directory.release("alice");
+        assertThat(one.published).singleElement()
+                .satisfies(event -> assertThat(event.getType()).isEqualTo(PresenceEvent.Type.RELEASE));
+        two.directory.apply(one.takePublished());
+
+        assertThat(one.directory.isClaimedLocally("alice")).isFalse();
+        assertThat(two.directory.claim("alice")).isTrue();
+    }
+
+    @Test
+    void releaseByAnotherNodeDoesNotFreeALiveClaim() {
+        one.directory.apply(List.of(claim("alice", 2, one.clock.now())));
+
+        one.directory.apply(List.of(new PresenceEvent(PresenceEvent.Type.RELEASE, "alice", 3, one.clock.now())));
+
+        assertThat(one.directory.claim("alice")).isFalse();
+        // Releasing a claim this node does not hold changes nothing
+        one.directory.release("alice");
+        assertThat(one.published).isEmpty();
+    }
+
+    @Test
+    void remoteClaimIsFreeOnceItsLeaseEnds() throws InterruptedException {
+        one.properties.getPresence().setLease(Duration.ofMillis(20));
+        one.directory.apply(List.of(claim("alice", 2, one.clock.now())));
+        assertThat(one.directory.claim("alice")).isFalse();
+
+        Thread.sleep(50);
+
+        assertThat(one.directory.claim("alice")).isTrue();
+    }
+
+    @Test
+    void refreshRenewsLocalClaimsAndForgetsExpiredOnes() throws InterruptedException {
+        one.properties.getPresence().setLease(Duration.ofMillis(20));
+        one.directory.claim("alice");
+        one.directory.apply(List.of(claim("bob", 2, one.clock.now())));
+        one.takePublished();
+
+        Thread.sleep(50);
+        one.directory.refresh();
+
+        assertThat(one.published).extracting(PresenceEvent::getUsername).containsExactly("alice");
+        assertThat(one.meterRegistry.get("status.presence.claims").gauge().value()).isEqualTo(1);
+        assertThat(one.directory.isClaimedLocally("alice")).isTrue();
+    }
+
+    private static PresenceEvent claim(String username, int node, long version) {
+        return new PresenceEvent(PresenceEvent.Type.CLAIM, username, node, version);
+    }
+
+    // A node with one peer; what it publishes is kept instead of sent
+    private static class Node {
+
+        final StatusProperties properties;
+        final HybridClock clock;
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final List<PresenceEvent> published = new CopyOnWriteArrayList<>();
+        final List<Object> events = new CopyOnWriteArrayList<>();
+        final PresenceDirectory directory;
+
+        Node(int id) {
+            properties = HybridClockTest.properties(id);
+            clock = new HybridClock(properties);
+            PeerRegistry peerRegistry = mock(PeerRegistry.class);
+            when(peerRegistry.urls()).thenReturn(List.of("http://peer"));
+            PeerClient peerClient = mock(PeerClient.class);
+            when(peerClient.publishPresence(any(), any())).thenAnswer(invocation -> {
+                published.addAll(invocation.getArgument(1));
+                return CompletableFuture.completedFuture(null);
+            });
+            directory = new PresenceDirectory(clock, peerClient, peerRegistry, properties, events::add,
+                    meterRegistry);
+        }
+
+        List<PresenceEvent> takePublished() {
+            List<PresenceEvent> taken = List.copyOf(published);
+            published.clear();
+            return taken;
+        }
+    }
+}
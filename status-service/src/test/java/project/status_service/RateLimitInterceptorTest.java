@@ -0,0 +1,127 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitInterceptorTest {
+
+    private final StatusProperties properties = new StatusProperties();
+    private final SessionRegistry sessionRegistry = new SessionRegistry(new SimpleMeterRegistry());
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RateLimitInterceptor interceptor = new RateLimitInterceptor(properties, sessionRegistry,
+            events::add, meterRegistry);
+
+    @Test
+    void acceptsABurstPerSessionAndThenRejects() {
+        limit(5, 3);
+
+        assertThat(sendAll("s1", 3)).isEqualTo(3);
+        assertThat(send("s1")).isFalse();
+        // Another session has its own bucket
+        assertThat(send("s2")).isTrue();
+        assertThat(interceptor.stats().rejectedBySession()).isEqualTo(1);
+        assertThat(rejected("session")).isEqualTo(1);
+    }
+
+    @Test
+    void usernameLimitCarriesOverToANewSession() {
+        limit(5, 3);
+        sessionRegistry.claim("s1", "Alice");
+        assertThat(sendAll("s1", 3)).isEqualTo(3);
+
+        // Reconnecting under the same name, in any case, does not refill the bucket
+        sessionRegistry.release("s1");
+        sessionRegistry.claim("s2", "alice");
+
+        assertThat(send("s2")).isFalse();
+        assertThat(interceptor.stats().rejectedByUsername()).isEqualTo(1);
+        assertThat(interceptor.stats().rejectedBySession()).isZero();
+        assertThat(rejected("username")).isEqualTo(1);
+        assertThat(rejected("session")).isZero();
+    }
+
+    @Test
+    void sendsOneErrorPerStreakOfRejections() throws InterruptedException {
+        limit(5, 1);
+        send("s1");
+
+        assertThat(sendAll("s1", 5)).isZero();
+        assertThat(events).containsExactly(new MessageRejectedEvent("s1", "Too many status updates, slow down."));
+
+        // An accepted message ends the streak
+        Thread.sleep(250);
+        assertThat(send("s1")).isTrue();
+        assertThat(send("s1")).isFalse();
+        assertThat(events).hasSize(2);
+    }
+
+    @Test
+    void sweepDropsOnlyBucketsThatHaveRefilled() throws InterruptedException {
+        limit(5, 1);
+        sessionRegistry.claim("s1", "alice");
+        send("s1");
+
+        interceptor.sweep();
+        assertThat(interceptor.stats().sessions()).isEqualTo(1);
+        assertThat(interceptor.stats().usernames()).isEqualTo(1);
+
+        Thread.sleep(250);
+        interceptor.sweep();
+        assertThat(interceptor.stats().sessions()).isZero();
+        assertThat(interceptor.stats().usernames()).isZero();
+    }
+
+    @Test
+    void onlyStatusMessagesAreLimited() {
+        limit(5, 1);
+        send("s1");
+
+        assertThat(interceptor.preSend(message(SimpMessageType.MESSAGE, "s1", "/app/other"), null)).isNotNull();
+        assertThat(interceptor.preSend(message(SimpMessageType.SUBSCRIBE, "s1", "/topic/status"), null)).isNotNull();
+        assertThat(send("s1")).isFalse();
+
+        properties.getRateLimit().setEnabled(false);
+        assertThat(send("s1")).isTrue();
+    }
+
+    private void limit(double rate, int burst) {
+        properties.getRateLimit().setRate(rate);
+        properties.getRateLimit().setBurst(burst);
+    }
+
+    private boolean send(String sessionId) {
+        Message<?> message = message(SimpMessageType.MESSAGE, sessionId, RateLimitInterceptor.LIMITED_DESTINATION);
+        return interceptor.preSend(message, null) != null;
+    }
+
+    private int sendAll(String sessionId, int count) {
+        int accepted = 0;
+        for (int i = 0; i < count; i++) {
+            if (send(sessionId)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    private static Message<?> message(SimpMessageType type, String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private double rejected(String scope) {
+        return meterRegistry.get("status.ratelimit.rejected").tag("scope", scope).functionCounter().count();
+    }
+}
@@ -0,0 +1,219 @@
+package project.status_service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplicationOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    private ReplicationOutbox outbox;
+
+    @AfterEach
+    void closeOutbox() throws IOException {
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    @Test
+    void recoversPendingChangesAndCursorsAfterReopen() throws IOException {
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("a");
+        outbox.append(upsert(1, "v1"));
+        outbox.append(upsert(2, "v1"));
+        outbox.append(upsert(1, "v2"));
+        outbox.append(delete(3));
+        outbox.ack("a", 2);
+        outbox.close();
+
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("a");
+
+        assertThat(outbox.cursor("a")).isEqualTo(2);
+        ReplicationOutbox.Batch batch = outbox.read(outbox.cursor("a"), 100);
+        assertThat(batch.lastSeq()).isEqualTo(4);
+        assertThat(batch.ops()).extracting(ReplicationOp::getId).containsExactly(1L, 3L);
+        assertThat(batch.ops().get(0).getStatus().getStatustext()).isEqualTo("v2");
+        assertThat(batch.ops().get(1).getType()).isEqualTo(ReplicationOp.Type.DELETE);
+        assertThat(outbox.append(upsert(4, "v1"))).isEqualTo(5);
+    }
+
+    @Test
+    void stopsRecoveryAtATornFinalRecord() throws IOException {
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("a");
+        outbox.append(upsert(1, "v1"));
+        outbox.append(upsert(2, "v1"));
+        outbox.close();
+        outbox = null;
+
+        // A record whose length made it to disk but whose body is garbage
+        try (FileChannel file = FileChannel.open(directory.resolve("outbox.log"), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer log = file.map(FileChannel.MapMode.READ_WRITE, 0, file.size());
+            int end = endOfRecords(log);
+            log.putInt(end, 20);
+            for (int i = 0; i < 20; i++) {
+                log.put(end + 4 + i, (byte) 0x09);
+            }
+        }
+
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("a");
+        assertThat(outbox.read(0, 100).ops()).extracting(ReplicationOp::getId).containsExactly(1L, 2L);
+
+        // The next append takes the place of the torn record
+        outbox.append(upsert(3, "a status text long enough to cover the torn record"));
+        outbox.close();
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("a");
+        assertThat(outbox.read(0, 100).ops()).extracting(ReplicationOp::getId).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void compactionKeepsLiveChangesAndDropsTheOldestWhenFull() throws IOException {
+        outbox = open(DataSize.ofKilobytes(4));
+        outbox.register("slow");
+        for (long id = 1; id <= 200; id++) {
+            outbox.append(upsert(id, "v1"));
+        }
+
+        List<ReplicationOp> pending = outbox.read(0, 1000).ops();
+        assertThat(pending).isNotEmpty().hasSizeLessThan(200);
+        assertThat(pending.get(pending.size() - 1).getId()).isEqualTo(200L);
+        // What is left is the newest changes, without gaps
+        long first = pending.get(0).getId();
+        assertThat(pending).extracting(ReplicationOp::getId)
+                .containsExactlyElementsOf(LongStream.rangeClosed(first, 200).boxed().toList());
+
+        outbox.close();
+        outbox = open(DataSize.ofKilobytes(4));
+        outbox.register("slow");
+        assertThat(outbox.read(0, 1000).ops()).extracting(ReplicationOp::getId)
+                .containsExactlyElementsOf(pending.stream().map(ReplicationOp::getId).toList());
+        assertThat(outbox.append(upsert(201, "v1"))).isEqualTo(201);
+    }
+
+    @Test
+    void compactionKeepsOnlyTheNewestChangePerId() throws IOException {
+        outbox = open(DataSize.ofKilobytes(4));
+        outbox.register("slow");
+        for (int round = 0; round < 100; round++) {
+            for (long id = 1; id <= 5; id++) {
+                outbox.append(upsert(id, "round " + round));
+            }
+        }
+
+        List<ReplicationOp> pending = outbox.read(0, 1000).ops();
+        assertThat(pending).extracting(ReplicationOp::getId).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(pending).allSatisfy(op -> assertThat(op.getStatus().getStatustext()).isEqualTo("round 99"));
+    }
+
+    @Test
+    void prunesOnlyWhatEveryRegisteredPeerAcknowledged() throws IOException {
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("a");
+        outbox.register("b");
+        outbox.register("c");
+        outbox.append(upsert(1, "v1"));
+        outbox.append(upsert(2, "v1"));
+        outbox.append(upsert(3, "v1"));
+
+        outbox.ack("a", 3);
+        outbox.ack("b", 2);
+        assertThat(outbox.read(0, 100).ops()).hasSize(3);
+
+        outbox.ack("c", 1);
+        assertThat(outbox.read(0, 100).ops()).extracting(ReplicationOp::getId).containsExactly(2L, 3L);
+
+        // A peer that leaves no longer holds changes back
+        outbox.unregister("c");
+        assertThat(outbox.read(0, 100).ops()).extracting(ReplicationOp::getId).containsExactly(3L);
+        assertThat(outbox.pending("a")).isZero();
+        assertThat(outbox.pending("b")).isEqualTo(1);
+
+        outbox.ack("b", 3);
+        assertThat(outbox.read(0, 100).ops()).isEmpty();
+    }
+
+    @Test
+    void lateAcknowledgementDoesNotRestoreTheCursorOfAnUnregisteredPeer() throws IOException {
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("gone");
+        outbox.register("a");
+        outbox.append(upsert(1, "v1"));
+        outbox.append(upsert(2, "v1"));
+
+        outbox.unregister("gone");
+        outbox.ack("gone", 1);
+        outbox.close();
+
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("gone");
+        // Back as a new peer, which starts at the head instead of at the acknowledged change
+        assertThat(outbox.cursor("gone")).isEqualTo(2);
+        assertThat(outbox.pending("gone")).isZero();
+    }
+
+    @Test
+    void newPeerStartsAtTheHeadAndKeepsItsCursorAcrossRestarts() throws IOException {
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("a");
+        outbox.append(upsert(1, "v1"));
+        outbox.append(upsert(2, "v1"));
+
+        outbox.register("late");
+        outbox.register("a");
+        assertThat(outbox.cursor("late")).isEqualTo(2);
+        assertThat(outbox.cursor("a")).isZero();
+        outbox.append(upsert(3, "v1"));
+        outbox.close();
+
+        outbox = open(DataSize.ofKilobytes(64));
+        outbox.register("late");
+        assertThat(outbox.read(outbox.cursor("late"), 100).ops()).extracting(ReplicationOp::getId)
+                .containsExactly(3L);
+    }
+
+    private ReplicationOutbox open(DataSize maxSize) throws IOException {
+        StatusProperties properties = new StatusProperties();
+        properties.getOutbox().setDirectory(directory.toString());
+        properties.getOutbox().setMaxSize(maxSize);
+        ReplicationOutbox opened = new ReplicationOutbox(properties);
+        opened.open();
+        return opened;
+    }
+
+    private static ReplicationOp upsert(long id, String text) {
+        return ReplicationOp.upsert(new Status(id, "user" + id, text, LocalDateTime.of(2024, 1, 1, 0, 0), id, 1));
+    }
+
+    private static ReplicationOp delete(long id) {
+        return ReplicationOp.delete(new Tombstone(id, LocalDateTime.of(2024, 1, 1, 0, 0), id, 1), "user" + id);
+    }
+
+    // Position after the last complete record
+    private static int endOfRecords(ByteBuffer log) {
+        int position = 0;
+        int length;
+        while ((length = log.getInt(position)) > 0) {
+            position += 4 + length;
+        }
+        return position;
+    }
+}
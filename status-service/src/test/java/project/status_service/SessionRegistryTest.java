@@ -0,0 +1,97 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SessionRegistry registry = new SessionRegistry(meterRegistry);
+
+    @Test
+    void usernameBelongsToOneSessionInAnyCase() {
+        assertThat(registry.claim("s1", "Alice")).isTrue();
+
+        assertThat(registry.claim("s2", "alice")).isFalse();
+        assertThat(registry.claim("s2", "ALICE")).isFalse();
+        assertThat(registry.usernameOf("s2")).isNull();
+        assertThat(registry.sessionOf("aLiCe")).isEqualTo("s1");
+        // Claiming again from the owning session, in another case, keeps the claim
+        assertThat(registry.claim("s1", "alice")).isTrue();
+        assertThat(registry.usernameOf("s1")).isEqualTo("alice");
+    }
+
+    @Test
+    void switchingUsernamesFreesThePreviousOne() {
+        registry.claim("s1", "alice");
+
+        assertThat(registry.claim("s1", "bob")).isTrue();
+
+        assertThat(registry.sessionOf("alice")).isNull();
+        assertThat(registry.claim("s2", "alice")).isTrue();
+        assertThat(registry.sessionOf("bob")).isEqualTo("s1");
+    }
+
+    @Test
+    void refusedSwitchKeepsThePreviousUsername() {
+        registry.claim("s1", "alice");
+        registry.claim("s2", "bob");
+
+        assertThat(registry.claim("s1", "Bob")).isFalse();
+
+        assertThat(registry.usernameOf("s1")).isEqualTo("alice");
+        assertThat(registry.sessionOf("alice")).isEqualTo("s1");
+    }
+
+    @Test
+    void releasingASessionFreesItsUsername() {
+        registry.claim("s1", "Alice");
+
+        assertThat(registry.release("s1")).isEqualTo("Alice");
+        assertThat(registry.release("s1")).isNull();
+
+        assertThat(registry.sessionOf("alice")).isNull();
+        assertThat(registry.claim("s2", "alice")).isTrue();
+    }
+
+    @Test
+    void releasingAUsernameRemovesItsSession() {
+        registry.claim("s1", "Alice");
+
+        assertThat(registry.releaseUsername("ALICE")).isEqualTo("s1");
+        assertThat(registry.releaseUsername("alice")).isNull();
+
+        assertThat(registry.usernameOf("s1")).isNull();
+        assertThat(meterRegistry.get("status.presence.sessions").gauge().value()).isZero();
+    }
+
+    @Test
+    void concurrentClaimsOfOneUsernameHaveOneWinner() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Boolean>> claims = IntStream.range(0, 64)
+                    .<Callable<Boolean>>mapToObj(i -> () -> registry.claim("s" + i, i % 2 == 0 ? "alice" : "Alice"))
+                    .toList();
+            long winners = 0;
+            for (Future<Boolean> claimed : executor.invokeAll(claims)) {
+                winners += claimed.get() ? 1 : 0;
+            }
+
+            assertThat(winners).isEqualTo(1);
+            String owner = registry.sessionOf("alice");
+            assertThat(registry.usernameOf(owner)).isEqualToIgnoringCase("alice");
+            assertThat(meterRegistry.get("status.presence.sessions").gauge().value()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
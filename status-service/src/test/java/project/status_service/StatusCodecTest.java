@@ -0,0 +1,138 @@
+package project.status_service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StatusCodecTest {
+
+    @Test
+    void statusRoundTripsAllFields() {
+        Status status = new Status(42L, "jürgen", "out for lunch ☕",
+                LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123456789), 987654321L, 3);
+        status.setGroup("team-a");
+
+        Status read = StatusCodec.read(ByteBuffer.wrap(StatusCodec.encode(status)));
+
+        assertThat(read).usingRecursiveComparison().isEqualTo(status);
+    }
+
+    @Test
+    void statusRoundTripsNullsAndTimestampsBeforeTheEpoch() {
+        Status empty = new Status(1L, "anna", null, null, 0, 0);
+        Status old = new Status(-5L, "bert", "", LocalDateTime.of(1969, 12, 31, 23, 59, 59, 1), 1, 1);
+
+        assertThat(StatusCodec.read(ByteBuffer.wrap(StatusCodec.encode(empty))))
+                .usingRecursiveComparison().isEqualTo(empty);
+        assertThat(StatusCodec.read(ByteBuffer.wrap(StatusCodec.encode(old))))
+                .usingRecursiveComparison().isEqualTo(old);
+    }
+
+    @Test
+    void statusWithoutVersionReadsAsVersionZero() {
+        StatusCodec.Writer writer = new StatusCodec.Writer(16);
+        writer.writeVarLong(7);
+        writer.writeString("carla");
+        writer.writeString("busy");
+        writer.writeVarLong(0);
+
+        Status read = StatusCodec.read(ByteBuffer.wrap(writer.toByteArray()));
+
+        assertThat(read.getId()).isEqualTo(7L);
+        assertThat(read.getUsername()).isEqualTo("carla");
+        assertThat(read.getStatustext()).isEqualTo("busy");
+        assertThat(read.getTimestamp()).isNull();
+        assertThat(read.getVersion()).isZero();
+        assertThat(read.getOrigin()).isZero();
+        assertThat(read.getGroup()).isNull();
+    }
+
+    @Test
+    void statusWithoutGroupReadsWithoutGroup() {
+        StatusCodec.Writer writer = new StatusCodec.Writer(16);
+        writer.writeVarLong(8);
+        writer.writeString("dora");
+        writer.writeString("away");
+        writer.writeVarLong(0);
+        writer.writeVarLong(55);
+        writer.writeVarLong(2);
+
+        Status read = StatusCodec.read(ByteBuffer.wrap(writer.toByteArray()));
+
+        assertThat(read.getVersion()).isEqualTo(55);
+        assertThat(read.getOrigin()).isEqualTo(2);
+        assertThat(read.getGroup()).isNull();
+    }
+
+    @Test
+    void batchRoundTripsUpsertsAndDeletes() {
+        Status status = new Status(10L, "emil", "here", LocalDateTime.of(2024, 1, 2, 3, 4, 5), 100, 1);
+        List<ReplicationOp> ops = List.of(
+                ReplicationOp.upsert(status),
+                ReplicationOp.delete(new Tombstone(11L, LocalDateTime.now(), 200, 2), "fritz"));
+
+        List<ReplicationOp> read = StatusCodec.readBatch(ByteBuffer.wrap(StatusCodec.encodeBatch(ops)));
+
+        assertThat(read).hasSize(2);
+        assertThat(read.get(0).getType()).isEqualTo(ReplicationOp.Type.UPSERT);
+        assertThat(read.get(0).getId()).isEqualTo(10L);
+        assertThat(read.get(0).getStatus()).usingRecursiveComparison().isEqualTo(status);
+        assertThat(read.get(1).getType()).isEqualTo(ReplicationOp.Type.DELETE);
+        assertThat(read.get(1).getId()).isEqualTo(11L);
+        assertThat(read.get(1).getVersion()).isEqualTo(200L);
+        assertThat(read.get(1).getOrigin()).isEqualTo(2);
+        // The username is only known locally and not encoded
+        assertThat(read.get(1).getUsername()).isNull();
+    }
+
+    @Test
+    void deleteWithoutVersionReadsAsVersionZero() {
+        StatusCodec.Writer writer = new StatusCodec.Writer(16);
+        writer.writeByte(ReplicationOp.Type.DELETE.ordinal());
+        writer.writeVarLong(12);
+
+        ReplicationOp read = StatusCodec.readOp(ByteBuffer.wrap(writer.toByteArray()), 5);
+
+        assertThat(read.getType()).isEqualTo(ReplicationOp.Type.DELETE);
+        assertThat(read.getId()).isEqualTo(12L);
+        assertThat(read.getEnqueuedAt()).isEqualTo(5);
+        assertThat(read.getTombstone().getVersion()).isZero();
+        assertThat(read.getTombstone().getOrigin()).isZero();
+    }
+
+    @Test
+    void stringLengthBeyondTheBufferIsRejected() {
+        StatusCodec.Writer writer = new StatusCodec.Writer(16);
+        writer.writeVarLong(Integer.MAX_VALUE);
+        writer.writeBytes(new byte[]{'a', 'b'}, 0, 2);
+        StatusCodec.Writer negative = new StatusCodec.Writer(16);
+        negative.writeVarLong(-1);
+
+        assertThatThrownBy(() -> StatusCodec.readString(ByteBuffer.wrap(writer.toByteArray())))
+                .isInstanceOf(BufferUnderflowException.class);
+        assertThatThrownBy(() -> StatusCodec.readString(ByteBuffer.wrap(negative.toByteArray())))
+                .isInstanceOf(BufferUnderflowException.class);
+    }
+
+    @Test
+    void varLongRoundTripsExtremes() {
+        StatusCodec.Writer writer = new StatusCodec.Writer(1);
+        long[] values = {0, 1, 127, 128, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        for (long value : values) {
+            writer.writeVarLong(value);
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(writer.toByteArray());
+        for (long value : values) {
+            assertThat(StatusCodec.readVarLong(in)).isEqualTo(value);
+        }
+        assertThat(in.hasRemaining()).isFalse();
+        assertThat(StatusCodec.unzigzag(StatusCodec.zigzag(-123456789L))).isEqualTo(-123456789L);
+    }
+}
@@ -0,0 +1,87 @@
+package project.status_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class StatusHttpMessageConverterTest {
+
+    private static final Type BATCH = ResolvableType.forClassWithGenerics(List.class, ReplicationOp.class).getType();
+
+    private final StatusHttpMessageConverter converter = new StatusHttpMessageConverter();
+
+    @Test
+    void statusRoundTrips() throws IOException {
+        Status status = status();
+        MockHttpOutputMessage out = new MockHttpOutputMessage();
+
+        converter.write(status, Status.class, StatusHttpMessageConverter.MEDIA_TYPE, out);
+
+        assertThat(out.getHeaders().getContentType()).isEqualTo(StatusHttpMessageConverter.MEDIA_TYPE);
+        assertThat(out.getHeaders().getContentLength()).isEqualTo(out.getBodyAsBytes().length);
+        Object read = converter.read(Status.class, null, new MockHttpInputMessage(out.getBodyAsBytes()));
+        assertThat(read).usingRecursiveComparison().isEqualTo(status);
+    }
+
+    @Test
+    void batchRoundTrips() throws IOException {
+        List<ReplicationOp> ops = List.of(ReplicationOp.upsert(status()),
+                ReplicationOp.delete(new Tombstone(2L, LocalDateTime.now(), 20, 1), "bert"));
+        MockHttpOutputMessage out = new MockHttpOutputMessage();
+
+        converter.write(ops, BATCH, StatusHttpMessageConverter.MEDIA_TYPE, out);
+
+        Object read = converter.read(BATCH, null, new MockHttpInputMessage(out.getBodyAsBytes()));
+        assertThat((List<?>) read).extracting("id", "type")
+                .containsExactly(tuple(1L, ReplicationOp.Type.UPSERT), tuple(2L, ReplicationOp.Type.DELETE));
+    }
+
+    @Test
+    void onlyAppliesToItsMediaTypeAndTypes() {
+        assertThat(converter.canRead(Status.class, null, StatusHttpMessageConverter.MEDIA_TYPE)).isTrue();
+        assertThat(converter.canRead(BATCH, null, StatusHttpMessageConverter.MEDIA_TYPE)).isTrue();
+        assertThat(converter.canRead(Status.class, null, MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(converter.canRead(String.class, null, StatusHttpMessageConverter.MEDIA_TYPE)).isFalse();
+        Type strings = ResolvableType.forClassWithGenerics(List.class, String.class).getType();
+        assertThat(converter.canRead(strings, null, StatusHttpMessageConverter.MEDIA_TYPE)).isFalse();
+        assertThat(converter.canWrite(Status.class, Status.class, MediaType.APPLICATION_JSON)).isFalse();
+    }
+
+    @Test
+    void truncatedBodyIsNotReadable() {
+        byte[] encoded = StatusCodec.encode(status());
+        byte[] truncated = Arrays.copyOf(encoded, 5);
+
+        assertThatThrownBy(() -> converter.read(Status.class, null, new MockHttpInputMessage(truncated)))
+                .isInstanceOf(HttpMessageNotReadableException.class);
+    }
+
+    @Test
+    void lengthPrefixBeyondTheBodyIsNotReadable() {
+        StatusCodec.Writer writer = new StatusCodec.Writer(16);
+        writer.writeVarLong(1);
+        writer.writeVarLong(Integer.MAX_VALUE);
+
+        assertThatThrownBy(() -> converter.read(Status.class, null, new MockHttpInputMessage(writer.toByteArray())))
+                .isInstanceOf(HttpMessageNotReadableException.class);
+    }
+
+    private static Status status() {
+        Status status = new Status(1L, "anna", "Online", LocalDateTime.of(2025, 6, 1, 12, 0), 10, 1);
+        status.setGroup("team");
+        return status;
+    }
+}
@@ -0,0 +1,162 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatusJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final Map<Long, Status> live = new TreeMap<>();
+    private final Map<Long, Tombstone> tombstones = new TreeMap<>();
+    private final List<Object> replayed = new ArrayList<>();
+    private StatusJournal journal;
+
+    @AfterEach
+    void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void replaysTheLogInOrderAfterReopen() throws IOException {
+        journal = open();
+        journal.upsert(status(1, "v1"));
+        journal.upsert(status(2, "v1"));
+        journal.upsert(status(1, "v2"));
+        journal.delete(tombstone(2, 5));
+        journal.close();
+
+        journal = open();
+
+        assertThat(replayed).extracting(StatusJournalTest::describe)
+                .containsExactly("upsert 1 v1", "upsert 2 v1", "upsert 1 v2", "delete 2 @5");
+    }
+
+    @Test
+    void snapshotReplacesOlderSegmentsAndKeepsTombstones() throws IOException {
+        journal = open();
+        journal.upsert(status(1, "v1"));
+        journal.upsert(status(2, "v1"));
+        journal.delete(tombstone(2, 5));
+        live.put(1L, status(1, "v1"));
+        tombstones.put(2L, tombstone(2, 5));
+
+        journal.snapshot();
+        journal.upsert(status(3, "after the snapshot"));
+        journal.close();
+
+        assertThat(files("snapshot-")).hasSize(1);
+        assertThat(files("wal-")).hasSize(1);
+
+        journal = open();
+        assertThat(replayed).extracting(StatusJournalTest::describe)
+                .containsExactly("upsert 1 v1", "delete 2 @5", "upsert 3 after the snapshot");
+    }
+
+    @Test
+    void stopsAtATornTailAndKeepsAppending() throws IOException {
+        journal = open();
+        journal.upsert(status(1, "v1"));
+        journal.upsert(status(2, "v1"));
+        journal.close();
+        journal = null;
+
+        // A record whose length made it to disk but whose body did not
+        Path segment = files("wal-").get(0);
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            file.write(ByteBuffer.allocate(6).putInt(100).put((byte) 0).put((byte) 1).flip());
+        }
+
+        journal = open();
+        assertThat(replayed).extracting(StatusJournalTest::describe).containsExactly("upsert 1 v1", "upsert 2 v1");
+
+        // New records go to a new segment, so the torn one does not hide them
+        journal.upsert(status(3, "v1"));
+        journal.close();
+        journal = open();
+        assertThat(replayed).extracting(StatusJournalTest::describe)
+                .containsExactly("upsert 1 v1", "upsert 2 v1", "upsert 3 v1");
+    }
+
+    @Test
+    void deleteSurvivesASnapshotAndARestartOfTheStore() throws IOException {
+        StatusJournal first = new StatusJournal(properties());
+        StatusService before = service(first);
+        before.replicate(status(1, "live"));
+        before.replicateDelete(tombstone(1, 20));
+        // A delete of an id this node never had
+        before.replicateDelete(tombstone(2, 20));
+        first.snapshot();
+        first.close();
+
+        journal = new StatusJournal(properties());
+        StatusService after = service(journal);
+
+        assertThat(after.get(1L)).isNull();
+        assertThat(after.replicate(status(1, "stale"))).isFalse();
+        assertThat(after.replicate(status(2, "stale"))).isFalse();
+    }
+
+    private StatusJournal open() {
+        replayed.clear();
+        StatusJournal opened = new StatusJournal(properties());
+        opened.open(live.values(), tombstones.values(), replayed::add, replayed::add);
+        return opened;
+    }
+
+    private StatusProperties properties() {
+        StatusProperties properties = HybridClockTest.properties(1);
+        properties.getPersistence().setEnabled(true);
+        properties.getPersistence().setDirectory(directory.toString());
+        return properties;
+    }
+
+    private static StatusService service(StatusJournal journal) {
+        StatusService service = new StatusService(() -> 1000, journal,
+                new HybridClock(HybridClockTest.properties(1)), new SimpleMeterRegistry());
+        service.recover();
+        return service;
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(prefix)).toList();
+        }
+    }
+
+    private static String describe(Object record) {
+        if (record instanceof Status status) {
+            return "upsert " + status.getId() + " " + status.getStatustext();
+        }
+        Tombstone tombstone = (Tombstone) record;
+        return "delete " + tombstone.getId() + " @" + tombstone.getVersion();
+    }
+
+    private static Status status(long id, String text) {
+        return new Status(id, "user" + id, text, LocalDateTime.of(2025, 6, 1, 12, 0), 10, 2);
+    }
+
+    private static Tombstone tombstone(long id, long version) {
+        return new Tombstone(id, LocalDateTime.of(2025, 6, 1, 12, 0), version, 2);
+    }
+}
@@ -0,0 +1,48 @@
+package project.status_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatusMessageConverterTest {
+
+    private final StatusMessageConverter converter = new StatusMessageConverter();
+
+    @Test
+    void statusRoundTripsAsBytes() {
+        Status status = new Status(1L, "anna", "Online", LocalDateTime.of(2025, 6, 1, 12, 0), 10, 1);
+        status.setGroup("team");
+
+        Message<?> message = converter.toMessage(status,
+                new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, StatusMessageConverter.MIME_TYPE)));
+
+        assertThat(message).isNotNull();
+        assertThat(message.getPayload()).isEqualTo(StatusCodec.encode(status));
+        assertThat(converter.fromMessage(message, Status.class)).usingRecursiveComparison().isEqualTo(status);
+    }
+
+    @Test
+    void otherContentTypesAndClassesAreLeftToOtherConverters() {
+        Status status = new Status(1L, "anna", "Online", null, 10, 1);
+        MessageHeaders json = new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE,
+                MimeTypeUtils.APPLICATION_JSON));
+        MessageHeaders binary = new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE,
+                StatusMessageConverter.MIME_TYPE));
+
+        assertThat(converter.toMessage(status, json)).isNull();
+        // Without a content type the match is strict, so JSON stays the default
+        assertThat(converter.toMessage(status, null)).isNull();
+        assertThat(converter.toMessage("text", binary)).isNull();
+        Message<byte[]> jsonBody = MessageBuilder.withPayload("{}".getBytes())
+                .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON)
+                .build();
+        assertThat(converter.fromMessage(jsonBody, Status.class)).isNull();
+    }
+}
@@ -0,0 +1,263 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatusServiceTest {
+
+    private final HybridClock clock = new HybridClock(HybridClockTest.properties(1));
+    private final AtomicLong ids = new AtomicLong(100);
+    private final StatusService service = new StatusService(ids::incrementAndGet,
+            new StatusJournal(HybridClockTest.properties(1)), clock, new SimpleMeterRegistry());
+
+    @Test
+    void newerVersionReplacesTheEntry() {
+        assertThat(service.replicate(status(1, "first", 10, 2))).isTrue();
+        assertThat(service.replicate(status(1, "second", 11, 2))).isTrue();
+
+        assertThat(service.get(1L).getStatustext()).isEqualTo("second");
+    }
+
+    @Test
+    void staleReplicationIsRejected() {
+        service.replicate(status(1, "newer", 11, 2));
+
+        assertThat(service.replicate(status(1, "older", 10, 3))).isFalse();
+        assertThat(service.get(1L).getStatustext()).isEqualTo("newer");
+    }
+
+    @Test
+    void duplicateReplicationIsNotAppliedAgain() {
+        service.replicate(status(1, "same", 10, 2));
+        long seq = service.changeSeq();
+
+        assertThat(service.replicate(status(1, "same", 10, 2))).isFalse();
+        assertThat(service.changeSeq()).isEqualTo(seq);
+    }
+
+    @Test
+    void equalVersionsAreBrokenByOrigin() {
+        service.replicate(status(1, "from 2", 10, 2));
+
+        assertThat(service.replicate(status(1, "from 1", 10, 1))).isFalse();
+        assertThat(service.replicate(status(1, "from 3", 10, 3))).isTrue();
+        assertThat(service.get(1L).getStatustext()).isEqualTo("from 3");
+    }
+
+    @Test
+    void deliveryOrderDoesNotChangeTheWinner() {
+        StatusService other = new StatusService(ids::incrementAndGet,
+                new StatusJournal(HybridClockTest.properties(1)), new HybridClock(HybridClockTest.properties(1)),
+                new SimpleMeterRegistry());
+        Status a = status(1, "a", 10, 2);
+        Status b = status(1, "b", 10, 3);
+        Status c = status(1, "c", 9, 4);
+
+        service.replicate(a);
+        service.replicate(b);
+        service.replicate(c);
+        other.replicate(c);
+        other.replicate(b);
+        other.replicate(a);
+
+        assertThat(service.get(1L).getStatustext()).isEqualTo("b");
+        assertThat(other.get(1L).getStatustext()).isEqualTo("b");
+        assertThat(service.digest().getRoot()).isEqualTo(other.digest().getRoot());
+    }
+
+    @Test
+    void newerDeleteRemovesTheEntry() {
+        service.replicate(status(1, "live", 10, 2));
+
+        Status removed = service.replicateDelete(tombstone(1, 11, 2));
+
+        assertThat(removed).isNotNull();
+        assertThat(service.get(1L)).isNull();
+        assertThat(service.findByUsername("user1")).isNull();
+    }
+
+    @Test
+    void olderDeleteLosesAgainstANewerUpsert() {
+        service.replicate(status(1, "live", 11, 2));
+
+        assertThat(service.replicateDelete(tombstone(1, 10, 3))).isNull();
+        assertThat(service.get(1L).getStatustext()).isEqualTo("live");
+    }
+
+    @Test
+    void upsertOlderThanATombstoneDoesNotResurrectTheEntry() {
+        service.replicate(status(1, "live", 10, 2));
+        service.replicateDelete(tombstone(1, 12, 2));
+
+        assertThat(service.replicate(status(1, "late", 11, 3))).isFalse();
+        assertThat(service.get(1L)).isNull();
+    }
+
+    @Test
+    void upsertNewerThanATombstoneRecreatesTheEntry() {
+        service.replicate(status(1, "live", 10, 2));
+        service.replicateDelete(tombstone(1, 12, 2));
+
+        assertThat(service.replicate(status(1, "again", 13, 3))).isTrue();
+        assertThat(service.get(1L).getStatustext()).isEqualTo("again");
+    }
+
+    @Test
+    void deleteArrivingBeforeItsUpsertKeepsTheUpsertOut() {
+        assertThat(service.replicateDelete(tombstone(1, 12, 2))).isNull();
+
+        assertThat(service.replicate(status(1, "late", 11, 3))).isFalse();
+        assertThat(service.get(1L)).isNull();
+        assertThat(service.changesSince(0, 10, null).getDeleted()).extracting(Tombstone::getVersion)
+                .containsExactly(12L);
+    }
+
+    @Test
+    void olderDeleteOfAMissingIdDoesNotReplaceANewerTombstone() {
+        service.replicateDelete(tombstone(1, 12, 2));
+        long seq = service.changeSeq();
+
+        service.replicateDelete(tombstone(1, 11, 3));
+        service.replicateDelete(tombstone(1, 12, 2));
+
+        assertThat(service.changeSeq()).isEqualTo(seq);
+        assertThat(service.replicate(status(1, "between", 12, 1))).isFalse();
+        assertThat(service.replicate(status(1, "after", 13, 1))).isTrue();
+    }
+
+    @Test
+    void deleteAndUpsertWithEqualVersionsAreBrokenByOrigin() {
+        service.replicate(status(1, "live", 10, 2));
+
+        assertThat(service.replicateDelete(tombstone(1, 10, 1))).isNull();
+        assertThat(service.replicateDelete(tombstone(1, 10, 3))).isNotNull();
+        assertThat(service.replicate(status(1, "same version", 10, 2))).isFalse();
+    }
+
+    @Test
+    void localWriteAfterAReplicationAheadOfLocalTimeWins() {
+        long ahead = clock.now() + (60_000L << HybridClock.LOGICAL_BITS);
+        service.replicate(status(1, "from the future", ahead, 2));
+
+        StatusRequest request = new StatusRequest();
+        request.setUsername("user1");
+        request.setStatusText("local");
+        Status local = service.saveOrUpdate(request);
+
+        assertThat(local.getId()).isEqualTo(1L);
+        assertThat(local.getVersion()).isGreaterThan(ahead);
+        assertThat(service.get(1L).getStatustext()).isEqualTo("local");
+    }
+
+    @Test
+    void pagesWalkTheStoreInIdOrder() {
+        for (long id = 50; id >= 1; id--) {
+            service.replicate(status(id, "s" + id, 10, 2));
+        }
+
+        List<Long> seen = new ArrayList<>();
+        long after = Long.MIN_VALUE;
+        List<Status> page;
+        while (!(page = service.page(after, 7)).isEmpty()) {
+            assertThat(page).hasSizeLessThanOrEqualTo(7);
+            page.forEach(s -> seen.add(s.getId()));
+            after = page.get(page.size() - 1).getId();
+        }
+
+        assertThat(seen).isEqualTo(LongStream.rangeClosed(1, 50).boxed().toList());
+    }
+
+    @Test
+    void pagesFollowUpdatesAndDeletes() {
+        service.replicate(status(1, "one", 10, 2));
+        service.replicate(status(2, "two", 10, 2));
+        service.replicate(status(3, "three", 10, 2));
+
+        service.replicate(status(2, "two again", 11, 2));
+        service.replicateDelete(tombstone(1, 11, 2));
+
+        assertThat(service.page(Long.MIN_VALUE, 10)).extracting(Status::getStatustext)
+                .containsExactly("two again", "three");
+        assertThat(service.page(2, 10)).extracting(Status::getId).containsExactly(3L);
+    }
+
+    @Test
+    void concurrentSavesOfOneUsernameResolveToOneId() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Set<Long> saved = ConcurrentHashMap.newKeySet();
+            List<Callable<Object>> saves = IntStream.range(0, 200)
+                    .mapToObj(i -> (Callable<Object>) () -> saved.add(service.saveOrUpdate(
+                            request(i % 2 == 0 ? "alice" : "Alice", "text " + i)).getId()))
+                    .toList();
+            for (Future<Object> save : executor.invokeAll(saves)) {
+                save.get();
+            }
+
+            assertThat(saved).hasSize(1);
+            assertThat(service.getStore()).hasSize(1).containsKey(saved.iterator().next());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void findByUsernameIgnoresCase() {
+        Status saved = service.saveOrUpdate(request("Alice", "Online"));
+
+        assertThat(service.findByUsername("alice")).isEqualTo(saved);
+        assertThat(service.findByUsername("ALICE")).isEqualTo(saved);
+        assertThat(service.saveOrUpdate(request("aLiCe", "Away")).getId()).isEqualTo(saved.getId());
+    }
+
+    @Test
+    void updateCannotTakeTheUsernameOfAnotherStatus() {
+        Status alice = service.saveOrUpdate(request("alice", "Online"));
+        Status bob = service.saveOrUpdate(request("bob", "Online"));
+
+        assertThat(service.update(bob.getId(), request("Alice", "Taken"))).isNull();
+
+        assertThat(service.get(bob.getId()).getUsername()).isEqualTo("bob");
+        assertThat(service.findByUsername("alice").getId()).isEqualTo(alice.getId());
+        assertThat(service.findByUsername("bob").getId()).isEqualTo(bob.getId());
+    }
+
+    @Test
+    void updateRenameMovesTheUsernameIndex() {
+        Status bob = service.saveOrUpdate(request("bob", "Online"));
+
+        assertThat(service.update(bob.getId(), request("carol", "Renamed"))).isNotNull();
+
+        assertThat(service.findByUsername("bob")).isNull();
+        assertThat(service.findByUsername("Carol").getId()).isEqualTo(bob.getId());
+        // The old name is free again and gets a new id
+        assertThat(service.saveOrUpdate(request("bob", "Back")).getId()).isNotEqualTo(bob.getId());
+    }
+
+    private static StatusRequest request(String username, String text) {
+        return new StatusRequest(username, text, null);
+    }
+
+    private static Status status(long id, String text, long version, int origin) {
+        return new Status(id, "user" + id, text, LocalDateTime.of(2025, 6, 1, 12, 0), version, origin);
+    }
+
+    private static Tombstone tombstone(long id, long version, int origin) {
+        return new Tombstone(id, LocalDateTime.of(2025, 6, 1, 12, 0), version, origin);
+    }
+}
@@ -0,0 +1,169 @@
+package project.status_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubscriptionFiltersTest {
+
+    private final SubscriptionFilters filters = new SubscriptionFilters(new SimpleMeterRegistry());
+
+    @Test
+    void unfilteredSubscriptionsGetEveryStatusAndDelete() {
+        subscribe("plain", StatusGroups.STATUS_TOPIC, null, null, null);
+
+        assertThat(delivered("plain", status("alice", "Online"))).isTrue();
+        assertThat(delivered("plain", delete("alice"))).isTrue();
+    }
+
+    @Test
+    void usernamePrefixIgnoresCase() {
+        subscribe("sub", StatusGroups.STATUS_TOPIC, "Al", null, null);
+
+        assertThat(delivered("sub", status("ALICE", "Online"))).isTrue();
+        assertThat(delivered("sub", status("bob", "Online"))).isFalse();
+        assertThat(delivered("sub", delete("alina"))).isTrue();
+        assertThat(delivered("sub", delete("bob"))).isFalse();
+    }
+
+    @Test
+    void statusFilterOnlyLetsTheListedTextsThrough() {
+        subscribe("sub", StatusGroups.STATUS_TOPIC, null, "Online, Busy", null);
+
+        assertThat(delivered("sub", status("alice", "Online"))).isTrue();
+        assertThat(delivered("sub", status("alice", "Busy"))).isTrue();
+        assertThat(delivered("sub", status("alice", "Away"))).isFalse();
+    }
+
+    @Test
+    void deletesAreNotCheckedAgainstTheStatusFilter() {
+        subscribe("sub", StatusGroups.DELETE_TOPIC, "a", "Online", null);
+
+        assertThat(delivered("sub", delete("alice"))).isTrue();
+        assertThat(delivered("sub", delete("bob"))).isFalse();
+    }
+
+    @Test
+    void statusLeavingTheFilterIsDeletedForItsSubscribers() {
+        subscribe("online", StatusGroups.DELETE_TOPIC, null, "Online", null);
+        subscribe("both", StatusGroups.DELETE_TOPIC, null, "Online,Away", null);
+        subscribe("away", StatusGroups.DELETE_TOPIC, null, "Away", null);
+        subscribe("others", StatusGroups.DELETE_TOPIC, "bob", "Online", null);
+        subscribe("plain", StatusGroups.DELETE_TOPIC, null, null, null);
+
+        Message<?> leaving = leaving("alice", "Online", "Away");
+
+        assertThat(delivered("online", leaving)).isTrue();
+        assertThat(delivered("both", leaving)).isFalse();
+        assertThat(delivered("away", leaving)).isFalse();
+        assertThat(delivered("others", leaving)).isFalse();
+        assertThat(delivered("plain", leaving)).isFalse();
+    }
+
+    @Test
+    void binarySubscriptionsGetTheEncodedStatus() {
+        subscribe("binary", StatusGroups.STATUS_TOPIC, null, null, StatusCodec.MEDIA_TYPE);
+        Status status = new Status(7L, "alice", "Online", LocalDateTime.of(2025, 6, 1, 12, 0), 10, 1);
+        SimpMessageHeaderAccessor headers = headers("binary");
+        SubscriptionFilters.describe(headers, "alice", "Online");
+        SubscriptionFilters.attach(headers, status);
+
+        Message<?> sent = filters.preSend(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()),
+                null);
+
+        assertThat(sent.getHeaders().get(MessageHeaders.CONTENT_TYPE))
+                .isEqualTo(StatusMessageConverter.MIME_TYPE);
+        Status decoded = StatusCodec.read(ByteBuffer.wrap((byte[]) sent.getPayload()));
+        assertThat(decoded.getId()).isEqualTo(7L);
+        assertThat(decoded.getStatustext()).isEqualTo("Online");
+    }
+
+    @Test
+    void filtersEndWithTheSubscriptionAndTheSession() {
+        subscribe("one", StatusGroups.STATUS_TOPIC, null, "Online", null);
+        subscribe("two", StatusGroups.STATUS_TOPIC, null, "Online", null);
+
+        StompHeaderAccessor unsubscribe = StompHeaderAccessor.create(StompCommand.UNSUBSCRIBE);
+        unsubscribe.setSessionId("session");
+        unsubscribe.setSubscriptionId("one");
+        filters.handleUnsubscribe(new SessionUnsubscribeEvent(this,
+                MessageBuilder.createMessage(new byte[0], unsubscribe.getMessageHeaders())));
+        assertThat(delivered("one", status("alice", "Away"))).isTrue();
+        assertThat(delivered("two", status("alice", "Away"))).isFalse();
+
+        filters.handleDisconnect(new SessionDisconnectEvent(this,
+                MessageBuilder.createMessage(new byte[0], unsubscribe.getMessageHeaders()), "session",
+                CloseStatus.NORMAL));
+        assertThat(delivered("two", status("alice", "Away"))).isTrue();
+    }
+
+    private void subscribe(String subscriptionId, String destination, String prefix, String statuses,
+            String accept) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId("session");
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        if (prefix != null) {
+            accessor.setNativeHeader(SubscriptionFilters.USERNAME_PREFIX_FILTER, prefix);
+        }
+        if (statuses != null) {
+            accessor.setNativeHeader(SubscriptionFilters.STATUS_FILTER, statuses);
+        }
+        if (accept != null) {
+            accessor.setNativeHeader(SubscriptionFilters.ACCEPT_HEADER, accept);
+        }
+        filters.handleSubscribe(new SessionSubscribeEvent(this,
+                MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders())));
+    }
+
+    // Delivers a frame of the given broadcast to one subscription
+    private boolean delivered(String subscriptionId, Message<?> broadcast) {
+        SimpMessageHeaderAccessor headers = headers(subscriptionId);
+        broadcast.getHeaders().forEach((name, value) -> {
+            if (name.startsWith("status")) {
+                headers.setHeader(name, value);
+            }
+        });
+        return filters.preSend(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()), null) != null;
+    }
+
+    private static SimpMessageHeaderAccessor headers(String subscriptionId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId("session");
+        headers.setSubscriptionId(subscriptionId);
+        headers.setLeaveMutable(true);
+        return headers;
+    }
+
+    private static Message<?> status(String username, String text) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        SubscriptionFilters.describe(headers, username, text);
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+
+    private static Message<?> delete(String username) {
+        return status(username, null);
+    }
+
+    private static Message<?> leaving(String username, String previousText, String text) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        SubscriptionFilters.describe(headers, username, text);
+        SubscriptionFilters.leaving(headers, previousText);
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+}
@@ -0,0 +1,50 @@
+package project.status_service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void acceptsABurstAndThenTheSteadyRate() throws InterruptedException {
+        // One token per 200 ms, three at once
+        TokenBucket bucket = new TokenBucket(5, 3);
+
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isFalse();
+
+        Thread.sleep(250);
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void burstOfOneAllowsOnlyTheSteadyRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(5, 1);
+
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isFalse();
+
+        Thread.sleep(250);
+        assertThat(bucket.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void isFullOnceEveryTokenIsBack() {
+        TokenBucket bucket = new TokenBucket(5, 3);
+        long now = System.nanoTime();
+        assertThat(bucket.isFull(now)).isTrue();
+
+        bucket.tryAcquire();
+        bucket.tryAcquire();
+
+        long after = System.nanoTime();
+        assertThat(bucket.isFull(after)).isFalse();
+        assertThat(bucket.isFull(now + 300_000_000L)).isFalse();
+        // Two tokens take 400 ms to come back
+        assertThat(bucket.isFull(after + 400_000_000L)).isTrue();
+    }
+}